@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Synthetic tasks for the benchmarks. The files are written relative to the
+ * working directory, like the application does.
+ * @author Matthias Fischer
+ */
+final class BenchmarkData {
+    
+    private static final String[] WORDS = { "meeting", "review", "bugfix", "planning", "call", "support", "deploy", "docs" };
+    
+    private BenchmarkData() {
+    }
+    
+    /**
+     * Creates tasks of a day, spread over the day in start order.
+     * @param day Day of the tasks
+     * @param count Number of tasks
+     * @param projects Number of different projects
+     * @param random Source of the project and description choice
+     * @return Tasks
+     */
+    static ObservableList<Task> createDay(Calendar day, int count, int projects, Random random) {
+        ObservableList<Task> tasks = FXCollections.observableArrayList();
+        long start = day.getTimeInMillis();
+        long step = 24L * 60 * 60 * 1000 / Math.max(count, 1);
+        for(int i = 0; i < count; i++) {
+            String description = WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000);
+            tasks.add(new Task("project" + random.nextInt(projects), description, start + i * step, start + i * step + step / 2));
+        }
+        return tasks;
+    }
+    
+    /**
+     * Writes the day files of a whole year, if the year doesn't exist yet.
+     * @param year Year to write
+     * @param tasksPerDay Number of tasks per day
+     */
+    static void writeYear(int year, int tasksPerDay) {
+        Calendar day = Calendar.getInstance();
+        day.clear();
+        day.set(year, Calendar.JANUARY, 1);
+        if(new File(EditTaskFiles.getDirectory(day)).exists()) {
+            return;
+        }
+        
+        Random random = new Random(year);
+        StringBuilder row = new StringBuilder(128);
+        while(day.get(Calendar.YEAR) == year) {
+            ObservableList<String> rows = FXCollections.observableArrayList();
+            for(Task task : BenchmarkData.createDay(day, tasksPerDay, 50, random)) {
+                row.setLength(0);
+                rows.add(TaskCodec.encode(task, row).toString());
+            }
+            EditTaskFiles.createFile(EditTaskFiles.getDirectory(day), true);
+            EditTaskFiles.saveFile(EditTaskFiles.getFilePath(day), rows);
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+    
+    /**
+     * Creates a calendar of a day.
+     */
+    static Calendar getDay(int year, int month, int day) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month - 1, day);
+        return cal;
+    }
+    
+    /**
+     * Creates project names with a few common prefixes.
+     * @param count Number of names
+     * @return Names
+     */
+    static List<String> createProjects(int count) {
+        List<String> names = new ArrayList<>(count);
+        String[] prefixes = { "Project ", "Customer ", "Internal ", "Support ", "TT-" };
+        for(int i = 0; i < count; i++) {
+            names.add(prefixes[i % prefixes.length] + i);
+        }
+        return names;
+    }
+    
+    /**
+     * Stream that only counts the written bytes.
+     */
+    static class CountingStream extends OutputStream {
+        long count;
+        
+        @Override
+        public void write(int b) {
+            this.count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.count += len;
+        }
+    }
+}
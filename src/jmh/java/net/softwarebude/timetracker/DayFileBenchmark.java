@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving and reading of a day file with different numbers of tasks.
+ * @author Matthias Fischer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DayFileBenchmark {
+    
+    @Param({ "10", "100", "1000" })
+    private int tasks;
+    
+    private String path;
+    private ObservableList<Task> data;
+    
+    @Setup
+    public void setup() {
+        this.path = EditTaskFiles.getFilePath(BenchmarkData.getDay(2016, 3, 2));
+        this.data = BenchmarkData.createDay(BenchmarkData.getDay(2016, 3, 2), this.tasks, 20, new Random(2));
+        EditTaskFiles.createFile(EditTaskFiles.getDirectory(BenchmarkData.getDay(2016, 3, 2)), true);
+        EditTaskFiles.saveTasks(this.path, this.data);
+    }
+    
+    @Benchmark
+    public void saveTasks() {
+        EditTaskFiles.saveTasks(this.path, this.data);
+    }
+    
+    @Benchmark
+    public List<String> readFile() {
+        return EditTaskFiles.readFile(this.path);
+    }
+    
+    @Benchmark
+    public List<Task> readDay() {
+        return TaskCodec.local().readDay(this.path);
+    }
+}
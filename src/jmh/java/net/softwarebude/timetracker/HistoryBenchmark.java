@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading of a month and a year of history, reports and exports over a year.
+ * The history has 20 tasks per day.
+ * @author Matthias Fischer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+    
+    private static final int YEAR = 2015;
+    
+    @Setup
+    public void setup() {
+        BenchmarkData.writeYear(YEAR, 20);
+    }
+    
+    @Benchmark
+    public int loadMonth() {
+        return HistoryBenchmark.load(BenchmarkData.getDay(YEAR, 6, 1), Calendar.MONTH, false);
+    }
+    
+    @Benchmark
+    public int loadMonthText() {
+        return HistoryBenchmark.load(BenchmarkData.getDay(YEAR, 6, 1), Calendar.MONTH, true);
+    }
+    
+    @Benchmark
+    public int loadYear() {
+        return HistoryBenchmark.load(BenchmarkData.getDay(YEAR, 1, 1), Calendar.YEAR, false);
+    }
+    
+    @Benchmark
+    public int loadYearText() {
+        return HistoryBenchmark.load(BenchmarkData.getDay(YEAR, 1, 1), Calendar.YEAR, true);
+    }
+    
+    @Benchmark
+    public int reportYear() {
+        return ReportEngine.run(LocalDate.of(YEAR, 1, 1), LocalDate.of(YEAR, 12, 31), ReportEngine.Period.WEEK).size();
+    }
+    
+    @Benchmark
+    public long exportYear() throws IOException {
+        BenchmarkData.CountingStream out = new BenchmarkData.CountingStream();
+        TaskExporter.export(LocalDate.of(YEAR, 1, 1), LocalDate.of(YEAR, 12, 31), null, TaskExporter.Format.CSV, out);
+        return out.count;
+    }
+    
+    /**
+     * Reads all days of a month or year.
+     * @param first First day
+     * @param field Calendar.MONTH or Calendar.YEAR
+     * @param text Read the text files instead of the month segments
+     * @return Number of tasks
+     */
+    private static int load(Calendar first, int field, boolean text) {
+        int count = 0;
+        int end = first.get(field);
+        for(Calendar day = (Calendar)first.clone(); day.get(field) == end && day.get(Calendar.YEAR) == first.get(Calendar.YEAR); day.add(Calendar.DAY_OF_MONTH, 1)) {
+            count += text ? TaskCodec.local().readDay(EditTaskFiles.getFilePath(day)).size() : HistoryReader.readDay(day).size();
+        }
+        return count;
+    }
+}
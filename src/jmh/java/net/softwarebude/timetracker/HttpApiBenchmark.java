@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Load test of the HTTP API with 16 clients on keep-alive connections. The results are
+ * requests per second. The day has 20 tasks, start writes and forces the running task
+ * and appends the previous one to today's file.
+ * @author Matthias Fischer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(HttpApiBenchmark.CLIENTS)
+@Fork(1)
+public class HttpApiBenchmark {
+    
+    private static final int YEAR = 2015;
+    static final int CLIENTS = 16;
+    
+    private HttpApi api;
+    private String base;
+    
+    @Setup
+    public void setup() throws IOException {
+        // one pooled connection per client, the default keeps only five
+        System.setProperty("http.maxConnections", String.valueOf(CLIENTS));
+        BenchmarkData.writeYear(YEAR, 20);
+        EditTaskFiles.createFile("./files/projectlist.txt");
+        ProjectIndex projects = new ProjectIndex("./files/projectlist.txt");
+        projects.addAll(BenchmarkData.createProjects(2000));
+        this.api = HttpApi.start(new TaskStore(projects), projects, 0, null);
+        this.base = "http://localhost:" + this.api.getPort();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        this.api.stop();
+        AsyncPersistence.flush();
+    }
+    
+    @Benchmark
+    public int status() throws IOException {
+        return this.request("GET", "/status", null);
+    }
+    
+    @Benchmark
+    public int tasks() throws IOException {
+        return this.request("GET", "/tasks?date=" + YEAR + "-06-08", null);
+    }
+    
+    @Benchmark
+    public int projects() throws IOException {
+        return this.request("GET", "/projects?prefix=pro&limit=10", null);
+    }
+    
+    @Benchmark
+    public int start() throws IOException {
+        return this.request("POST", "/start", "{\"project\":\"Benchmark\",\"description\":\"load\"}");
+    }
+    
+    /**
+     * Sends a request and reads the whole response, so the connection is reused.
+     * @param method HTTP method
+     * @param path Path and query
+     * @param json JSON body or null
+     * @return Length of the response
+     */
+    private int request(String method, String path, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(this.base + path).openConnection();
+        connection.setRequestMethod(method);
+        if(json != null) {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(bytes);
+            }
+        }
+        if(connection.getResponseCode() != 200) {
+            throw new IOException(method + " " + path + ": " + connection.getResponseCode());
+        }
+        
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            for(int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return body.size();
+    }
+}
@@ -28,8 +28,11 @@ import java.io.IOException;
 import java.net.URL;
 import java.time.LocalDate;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.Set;
+import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -47,9 +50,11 @@ import javafx.scene.control.DatePicker;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.AnchorPane;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
@@ -65,14 +70,18 @@ public class ApplicationController implements Initializable {
     private final String pathFiles = "./files";
     private final String pathProjects = this.pathFiles + "/projectlist.txt";
     
+    private static final int SUGGESTIONS = 20;
+    private static final String SETTING_BACKUP_DIR = "backupDirectory";
+    
     private Task task;
-    private Settings settings;
     
     private ObservableList<Task> data;
-    private ObservableList<String> autoProjects;
+    private ProjectIndex projects;
+    private TaskStore store;
     
     private Calendar today;
     private Calendar selectedDay;
+    private long loadGeneration;
     
     @FXML private AnchorPane root;
     @FXML private DatePicker dpDate;
@@ -104,8 +113,8 @@ public class ApplicationController implements Initializable {
         this.today = this.selectedDay = Calendar.getInstance();
         
         this.data = FXCollections.observableArrayList();
-        this.autoProjects = FXCollections.observableArrayList();
-        TextFields.bindAutoCompletion(this.tfProject, this.autoProjects);   
+        this.projects = new ProjectIndex(this.pathProjects);
+        this.store = new TaskStore(this.projects);
         
         this.tfStartTime.textProperty().addListener((observable, oldValue, newValue) -> { this.checkSaveAllowed(); });
         this.tfEndTime.textProperty().addListener((observable, oldValue, newValue) -> { this.checkSaveAllowed(); });
@@ -113,13 +122,39 @@ public class ApplicationController implements Initializable {
         this.tfDescription.textProperty().addListener((observable, oldValue, newValue) -> { this.checkSaveAllowed(); });
         
         this.initFilesystem();
-        this.settings = new Settings();
-        this.settings.loadSettings();
+        Settings.addListener(s -> DayCache.setMaxSize(s.getSettingInteger(DayCache.SETTING_SIZE, DayCache.DEFAULT_SIZE)));
+        Settings.shared().thenAccept(s -> DayCache.setMaxSize(s.getSettingInteger(DayCache.SETTING_SIZE, DayCache.DEFAULT_SIZE)))
+                .exceptionally(AsyncPersistence::log);
         
         this.loadProjects();
         this.initTaskTable();
         this.loadTasks(this.today);
     } 
+    
+    /**
+     * Initializes everything that isn't needed for the first frame of the window.
+     * It is called by TimeTracker as soon as the window was drawn.
+     */
+    void initDeferred() {
+        TextFields.bindAutoCompletion(this.tfProject, request -> this.projects.suggest(request.getUserText(), SUGGESTIONS));
+        
+        TaskFilesWatcher.addListener(path -> Platform.runLater(() -> this.reloadChanged(path)));
+        AsyncPersistence.read(() -> {
+            TaskFilesWatcher.start();
+            return null;
+        }).exceptionally(AsyncPersistence::log);
+        
+        Settings.shared().thenAccept(s -> {
+            if(s.getSettingBoolean(HttpApi.SETTING_ENABLED)) {
+                try {
+                    HttpApi.start(this.store, this.projects, s.getSettingInteger(HttpApi.SETTING_PORT, HttpApi.DEFAULT_PORT),
+                            path -> Platform.runLater(() -> this.reloadChanged(path)));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }).exceptionally(AsyncPersistence::log);
+    }
         
     /**
      * Handler for the start/stop button. It starts/stops the time recording for a task.
@@ -143,9 +178,7 @@ public class ApplicationController implements Initializable {
             this.btnStartStop.setText("Start");
             this.task.stop();
             this.data.add(this.task);
-            
-            EditTaskFiles.saveTasks(EditTaskFiles.getFilePath(this.selectedDay), this.data);
-            this.addProject(this.task);
+            this.store.add(this.selectedDay, this.task);
             
             this.tfStartTime.setText("");
             this.tfEndTime.setText("");
@@ -208,12 +241,18 @@ public class ApplicationController implements Initializable {
         
         if(!pro.equals("") && !desc.equals("") && !startTime.equals("") && !endTime.equals("")) {
             if(tmpTask != null) {
-                tmpTask.setProject(pro);
-                tmpTask.setDescription(desc);
+                // the shown task is only changed after the new values were accepted
+                Task edited = tmpTask.copy();
+                edited.setProject(pro);
+                edited.setDescription(desc);
             
-                if(tmpTask.setStartTime(startTime) && tmpTask.setEndTime(endTime)) {
-                    EditTaskFiles.saveTasks(EditTaskFiles.getFilePath(this.selectedDay), this.data);
-                    this.loadTasks(this.selectedDay);
+                if(edited.setStartTime(startTime) && edited.setEndTime(endTime)) {
+                    String oldFileString = tmpTask.toFileString();
+                    tmpTask.setProject(pro);
+                    tmpTask.setDescription(desc);
+                    tmpTask.setStartTime(startTime);
+                    tmpTask.setEndTime(endTime);
+                    this.store.replace(this.selectedDay, oldFileString, tmpTask);
                 }
             } else { // new Task
                 tmpTask = new Task(pro, desc);
@@ -222,9 +261,7 @@ public class ApplicationController implements Initializable {
                 
                 if(tmpTask.setStartTime(startTime) && tmpTask.setEndTime(endTime)) {
                     this.data.add(tmpTask);
-            
-                    EditTaskFiles.saveTasks(EditTaskFiles.getFilePath(this.selectedDay), this.data);
-                    this.addProject(tmpTask);
+                    this.store.add(this.selectedDay, tmpTask);
 
                     this.tfStartTime.setText("");
                     this.tfEndTime.setText("");
@@ -253,9 +290,7 @@ public class ApplicationController implements Initializable {
             dia.setResultConverter(dialogButton -> {
                 if (dialogButton == yesButton) {
                     this.data.remove(t);
-
-                    EditTaskFiles.saveTasks(EditTaskFiles.getFilePath(this.selectedDay), this.data);
-                    this.loadTasks(this.selectedDay);
+                    this.store.remove(this.selectedDay, t);
                 }
                 return null;
             });
@@ -276,9 +311,24 @@ public class ApplicationController implements Initializable {
         File importFile = fileChooser.showOpenDialog(root.getScene().getWindow());
         
         if(importFile != null) {
-            Packager.unzip(importFile, this.pathFiles);
-            this.loadTasks(this.selectedDay);
-            this.loadProjects();
+            AsyncPersistence.writeResult(() -> {
+                Metrics.Timer timer = Metrics.start("backup.import");
+                try {
+                    return ImportEngine.importBackup(importFile, this.projects);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    timer.stop();
+                }
+            }).thenAcceptAsync(result -> {
+                this.loadTasks(this.selectedDay);
+                
+                Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                alert.setTitle("Import Backup");
+                alert.setHeaderText(result.toString());
+                alert.setContentText(String.join("\n", result.getConflicts()));
+                alert.show();
+            }, AsyncPersistence.FX).exceptionally(AsyncPersistence::log);
         }
     }
 
@@ -295,10 +345,163 @@ public class ApplicationController implements Initializable {
         
         File exportFile = fileChooser.showSaveDialog(root.getScene().getWindow());
         if(exportFile != null) {
-            Packager.zip(this.pathFiles, exportFile);
+            AsyncPersistence.read(() -> {
+                Metrics.time("backup.export", () -> Packager.zip(this.pathFiles, exportFile));
+                return null;
+            }).exceptionally(AsyncPersistence::log);
+        }
+    }
+    
+    /**
+     * Handler for the menuitem incremental backup. It stores the files that changed since the last backup.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleMenuItemIncrementalBackup(ActionEvent event) {
+        File backupDir = this.chooseBackupDirectory("Incremental Backup");
+        if(backupDir != null) {
+            AsyncPersistence.write(() -> {
+                Metrics.Timer timer = Metrics.start("backup.incremental");
+                try {
+                    IncrementalBackup.backup(this.pathFiles, backupDir);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    timer.stop();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Handler for the menuitem restore backup. It replays all increments of a backup directory.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleMenuItemRestoreBackup(ActionEvent event) {
+        File backupDir = this.chooseBackupDirectory("Restore Backup");
+        if(backupDir != null) {
+            AsyncPersistence.write(() -> {
+                Metrics.Timer timer = Metrics.start("backup.restore");
+                try {
+                    IncrementalBackup.restore(backupDir, this.pathFiles);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    timer.stop();
+                }
+            }).thenRunAsync(() -> {
+                this.loadTasks(this.selectedDay);
+                this.loadProjects();
+            }, AsyncPersistence.FX);
+        }
+    }
+    
+    /**
+     * Lets the user choose the backup directory, starting with the last chosen one.
+     * @param title Title of the dialog
+     * @return Chosen directory or null
+     */
+    private File chooseBackupDirectory(String title) {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle(title);
+        String last = Settings.current().getSettingString(SETTING_BACKUP_DIR);
+        if(last != null && new File(last).isDirectory()) {
+            directoryChooser.setInitialDirectory(new File(last));
+        }
+        
+        File backupDir = directoryChooser.showDialog(root.getScene().getWindow());
+        if(backupDir != null) {
+            Settings.update(SETTING_BACKUP_DIR, backupDir.getAbsolutePath());
+        }
+        return backupDir;
+    }
+    
+    /**
+     * Handler for the menuitem export tasks. It opens a dialog to export a range of days into CSV or JSON.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleMenuItemExportTasks(ActionEvent event) {
+        try {
+            Parent root = FXMLLoader.load(getClass().getResource("Export.fxml"));
+            Stage stage = new Stage();
+            stage.setTitle("Export Tasks");
+            stage.setScene(new Scene(root, 500, 130));
+            stage.initStyle(StageStyle.UTILITY);
+            stage.show();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Handler for the menuitem report. It opens a dialog with the hours per project.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleMenuItemReport(ActionEvent event) {
+        try {
+            Parent root = FXMLLoader.load(getClass().getResource("Report.fxml"));
+            Stage stage = new Stage();
+            stage.setTitle("Report");
+            stage.setScene(new Scene(root, 500, 400));
+            stage.initStyle(StageStyle.UTILITY);
+            stage.show();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Handler for the menuitem overview. It opens the week and month view.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleMenuItemOverview(ActionEvent event) {
+        try {
+            Parent root = FXMLLoader.load(getClass().getResource("Overview.fxml"));
+            Stage stage = new Stage();
+            stage.setTitle("Overview");
+            stage.setScene(new Scene(root, 600, 400));
+            stage.initStyle(StageStyle.UTILITY);
+            stage.show();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Handler for the menuitem search. It opens a dialog to search tasks of all days.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleMenuItemSearch(ActionEvent event) {
+        try {
+            Parent root = FXMLLoader.load(getClass().getResource("Search.fxml"));
+            Stage stage = new Stage();
+            stage.setTitle("Search");
+            stage.setScene(new Scene(root, 600, 400));
+            stage.initStyle(StageStyle.UTILITY);
+            stage.show();
+
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
     
+    /**
+     * Handler for the menuitem rebuild totals. It rebuilds the rollups of all months in the background.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleMenuItemRebuildTotals(ActionEvent event) {
+        AsyncPersistence.write(Rollups::rebuild);
+    }
+    
     /**
      * Handler for the menuitem settings. It opens a settingdialog.
      * @param event ActionEvent
@@ -328,6 +531,28 @@ public class ApplicationController implements Initializable {
         System.exit(0);
     }
     
+    /**
+     * Handler for the menuitem diagnostics. Shows the measured operations and writes them into diagnostics.txt.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleMenuItemDiagnostics(ActionEvent event) {
+        String dump = Metrics.dump();
+        AsyncPersistence.write(() -> Metrics.writeDump(Metrics.PATH_DUMP));
+        
+        TextArea text = new TextArea(dump);
+        text.setEditable(false);
+        text.setStyle("-fx-font-family: monospace");
+        text.setPrefSize(640, 360);
+        
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Diagnostics");
+        alert.setHeaderText("Saved to " + new File(Metrics.PATH_DUMP).getAbsolutePath());
+        alert.getDialogPane().setContent(text);
+        alert.setResizable(true);
+        alert.show();
+    }
+    
     /**
      * Handler for the menuitem about. Opens a dialog with informations about the application.
      * @param event ActionEvent
@@ -408,52 +633,83 @@ public class ApplicationController implements Initializable {
      * Create directory structure.
      */
     private void initFilesystem() {
-        EditTaskFiles.createFile(EditTaskFiles.getDirectory(this.today), true);
-        EditTaskFiles.createFile(this.pathProjects);
+        String directory = EditTaskFiles.getDirectory(this.today);
+        AsyncPersistence.write(() -> {
+            EditTaskFiles.createFile(directory, true);
+            EditTaskFiles.createFile(this.pathProjects);
+        });
     } 
     
     /**
-     * Loads tasks of the passed date. The tasks were directly saved into the table data.
+     * Loads tasks of the passed date. Cached days are shown immediately, other days are read
+     * in the background and saved into the table data as soon as they are read, unless another
+     * date was requested meanwhile. The neighbouring days are prefetched afterwards.
      * @param date Date of tasks
      */
     private void loadTasks(Calendar date) {
-        this.data.clear();
+        long generation = ++this.loadGeneration;
+        Metrics.Timer timer = Metrics.start("ui.loadTasks");
         
-        List<String> lines = EditTaskFiles.readFile(EditTaskFiles.getFilePath(date));
-        Task iss;
-
-        for(int i=0;i<lines.size();i++) {
-            iss = new Task(lines.get(i));
-            this.data.add(iss);
+        List<Task> cached = this.store.getCached(date);
+        if(cached != null) {
+            this.data.setAll(cached);
+            timer.stop();
+            return;
         }
+        
+        this.store.load(date).thenAcceptAsync(tasks -> {
+            if(generation == this.loadGeneration) {
+                this.data.setAll(tasks);
+                timer.stop();
+            }
+        }, AsyncPersistence.FX).exceptionally(AsyncPersistence::log);
     }
     
     /**
-     * Add a project to the project list. Only if its not already in the list.
-     * @param task Task which contains the project description
+     * Reloads a file which was changed by another program, if it is shown.
+     * @param path Path to the changed day file or project list
      */
-    private void addProject(Task task) {
-        String pro = task.getProject();
-        
-        if(!this.autoProjects.contains(pro)) {
-            this.autoProjects.add(pro);
-            EditTaskFiles.saveFile(this.pathProjects, this.autoProjects);
+    private void reloadChanged(String path) {
+        if(path.equals(this.pathProjects)) {
+            this.loadProjects();
+        } else if(path.equals(EditTaskFiles.getFilePath(this.selectedDay))) {
+            long generation = this.loadGeneration;
+            this.store.load(this.selectedDay).thenAcceptAsync(tasks -> {
+                if(generation == this.loadGeneration) {
+                    this.applyChangedTasks(tasks);
+                }
+            }, AsyncPersistence.FX).exceptionally(AsyncPersistence::log);
         }
+    }
+    
+    /**
+     * Applies the new tasks of the shown day to the table. Unchanged rows are kept,
+     * so the selection stays where it is.
+     * @param tasks Tasks of the day
+     */
+    private void applyChangedTasks(List<Task> tasks) {
+        Set<String> rows = new HashSet<>();
+        tasks.forEach(t -> rows.add(t.toFileString()));
+        this.data.removeIf(t -> !rows.contains(t.toFileString()));
         
-        TextFields.bindAutoCompletion(this.tfProject, this.autoProjects);
+        for(int i = 0; i < tasks.size(); i++) {
+            if(i >= this.data.size() || !this.data.get(i).toFileString().equals(tasks.get(i).toFileString())) {
+                this.data.add(i, tasks.get(i));
+            }
+        }
+        if(this.data.size() != tasks.size()) {
+            // the order was changed
+            this.data.setAll(tasks);
+        }
     }
     
     /**
-     * Load projects out of the projectlist file.
+     * Load projects out of the projectlist file in the background.
      */
     private void loadProjects() {
-        this.autoProjects.clear();
-        List<String> lines = EditTaskFiles.readFile(this.pathProjects);
-
-        for(int i=0;i<lines.size();i++) {
-            this.autoProjects.add(lines.get(i));
-        }
-        
-        TextFields.bindAutoCompletion(this.tfProject, this.autoProjects);
+        AsyncPersistence.read(() -> {
+            this.projects.load();
+            return null;
+        }).exceptionally(AsyncPersistence::log);
     }
 }
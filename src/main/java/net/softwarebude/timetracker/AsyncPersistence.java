@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+
+/**
+ * Runs file operations off the JavaFX Application Thread.
+ * All writes go through one writer thread in submission order. Writes that
+ * replace a whole file can be coalesced, so only the latest content is written.
+ * Reads run on a small pool after all writes submitted before them.
+ * @author Matthias Fischer
+ */
+public class AsyncPersistence {
+    
+    /**
+     * Executor that runs callbacks on the JavaFX Application Thread.
+     */
+    public static final Executor FX = Platform::runLater;
+    
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> AsyncPersistence.daemon(r, "persistence-writer"));
+    private static final ExecutorService READERS = Executors.newFixedThreadPool(2, r -> AsyncPersistence.daemon(r, "persistence-reader"));
+    
+    private static final Map<String, Runnable> COALESCED = new HashMap<>();
+    private static final Map<String, CompletableFuture<Void>> COALESCED_FUTURES = new HashMap<>();
+    private static CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+    
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(AsyncPersistence::flush, "persistence-shutdown"));
+    }
+    
+    /**
+     * Queues a write. Writes are executed one after another in submission order.
+     * @param write File operation
+     * @return Future which completes after the write
+     */
+    public static synchronized CompletableFuture<Void> write(Runnable write) {
+        lastWrite = CompletableFuture.runAsync(write, WRITER).exceptionally(AsyncPersistence::log);
+        return lastWrite;
+    }
+    
+    /**
+     * Queues a write with a result. It is executed in submission order like every write.
+     * @param <T> Type of the result
+     * @param write File operation
+     * @return Future with the result of the write
+     */
+    public static synchronized <T> CompletableFuture<T> writeResult(Supplier<T> write) {
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(write, WRITER);
+        lastWrite = future.thenApply(result -> (Void) null).exceptionally(AsyncPersistence::log);
+        return future;
+    }
+    
+    /**
+     * Queues a write that replaces a whole file. If a write with the same key is
+     * still waiting in the queue, only the newer one is executed.
+     * @param key Key of the written file, e.g. its path
+     * @param write File operation
+     * @return Future which completes after the latest write with this key
+     */
+    public static synchronized CompletableFuture<Void> writeCoalesced(String key, Runnable write) {
+        if(COALESCED.put(key, write) != null) {
+            return COALESCED_FUTURES.get(key);
+        }
+        
+        CompletableFuture<Void> future = AsyncPersistence.write(() -> {
+            Runnable latest;
+            synchronized(AsyncPersistence.class) {
+                latest = COALESCED.remove(key);
+                COALESCED_FUTURES.remove(key);
+            }
+            latest.run();
+        });
+        COALESCED_FUTURES.put(key, future);
+        return future;
+    }
+    
+    /**
+     * Queues a read. It starts after all writes which were submitted before.
+     * @param <T> Type of the result
+     * @param read File operation
+     * @return Future with the result of the read
+     */
+    public static synchronized <T> CompletableFuture<T> read(Supplier<T> read) {
+        return lastWrite.thenApplyAsync(v -> read.get(), READERS);
+    }
+    
+    /**
+     * Waits until all queued writes are done and forced to disk.
+     */
+    public static void flush() {
+        CompletableFuture<Void> last;
+        synchronized(AsyncPersistence.class) {
+            last = lastWrite;
+        }
+        
+        try {
+            last.get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        GroupCommit.flush();
+    }
+    
+    /**
+     * Logs a failed operation.
+     * @param <T> Type of the result of the operation
+     * @param e Exception of the operation
+     * @return null
+     */
+    static <T> T log(Throwable e) {
+        e.printStackTrace();
+        return null;
+    }
+    
+    /**
+     * Creates a daemon thread for the executors.
+     * @param r Runnable of the thread
+     * @param name Name of the thread
+     * @return Thread
+     */
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
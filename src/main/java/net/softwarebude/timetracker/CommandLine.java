@@ -0,0 +1,342 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command line mode without JavaFX. It works on the same files as the application,
+ * commands of parallel calls are serialized with a file lock.
+ * It has its own main class, because the Java launcher starts the JavaFX toolkit
+ * before the main method of an Application subclass.
+ * Usage: java -cp TimeTracker.jar net.softwarebude.timetracker.CommandLine command [arguments]
+ * @author Matthias Fischer
+ */
+public class CommandLine {
+    
+    private static final String USAGE = String.join("\n",
+            "Usage: CommandLine <command> [arguments]",
+            "  start <project> <description>   start recording, a running task is stopped first",
+            "  stop                            stop recording and save the task",
+            "  status                          show the running task",
+            "  add <date> <hh:mm> <hh:mm> <project> <description>",
+            "  list [date]                     tasks of a day (default today)",
+            "  report [--from date] [--to date] [--period DAY|WEEK|MONTH|TOTAL]",
+            "  export [--from date] [--to date] [--project name] [--format csv|json] [--out file]",
+            "  serve [--port n]                serve the HTTP API on localhost until the process is killed",
+            "Dates are yyyy-mm-dd, today or yesterday.");
+    
+    private final PrintStream out;
+    
+    /**
+     * Constructor of a command line
+     * @param out Output of the commands
+     */
+    CommandLine(PrintStream out) {
+        this.out = out;
+    }
+    
+    public static void main(String[] args) {
+        System.exit(new CommandLine(System.out).run(args));
+    }
+    
+    /**
+     * Runs a command.
+     * @param args Command and its arguments
+     * @return Exit code: 0 success, 1 error, 2 wrong usage
+     */
+    public int run(String[] args) {
+        if(args.length == 0) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        
+        String command = args[0];
+        List<String> params = Arrays.asList(args).subList(1, args.length);
+        try {
+            if(command.equals("serve")) {
+                return this.serve(params);
+            }
+            return FilesLock.locked(() -> {
+                try {
+                    return this.execute(command, params);
+                } finally {
+                    // the journals are folded in while no other process can append to them
+                    TaskJournal.compactPending();
+                }
+            });
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.err.println(e.getMessage() + "\n" + USAGE);
+            return 2;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+    }
+    
+    /**
+     * Executes a command while the files are locked.
+     * @param command Command
+     * @param params Arguments of the command
+     * @return Exit code
+     */
+    private int execute(String command, List<String> params) throws IOException {
+        switch(command) {
+            case "start":
+                return this.start(params);
+            case "stop":
+                return this.stop();
+            case "status":
+                return this.status();
+            case "add":
+                return this.add(params);
+            case "list":
+                return this.list(params);
+            case "report":
+                return this.report(params);
+            case "export":
+                return this.export(params);
+            default:
+                System.err.println("Unknown command: " + command + "\n" + USAGE);
+                return 2;
+        }
+    }
+    
+    /**
+     * Starts a task. A running task is stopped and saved before.
+     */
+    private int start(List<String> params) throws IOException {
+        if(params.size() < 2) {
+            throw new IllegalArgumentException("start needs a project and a description");
+        }
+        
+        this.stop();
+        long now = System.currentTimeMillis();
+        Task task = new Task(params.get(0), String.join(" ", params.subList(1, params.size())), now, now);
+        
+        RunningTask.write(task);
+        this.out.println("Started " + task.getStartTime() + " " + task.getProject() + ": " + task.getDescription());
+        return 0;
+    }
+    
+    /**
+     * Stops the running task and saves it into the file of its start day.
+     */
+    private int stop() throws IOException {
+        Task task = RunningTask.stop();
+        if(task != null) {
+            CommandLine.addProject(task.getProject());
+            this.out.println("Stopped " + task.getStartTime() + "-" + task.getEndTime() + " " + task.getProject() + ": " + task.getDescription());
+        }
+        return 0;
+    }
+    
+    /**
+     * Prints the running task.
+     */
+    private int status() throws IOException {
+        Task task = RunningTask.read();
+        if(task == null) {
+            this.out.println("No running task");
+            return 1;
+        }
+        long minutes = (System.currentTimeMillis() - task.getStartMillis()) / 60000;
+        this.out.println("Running since " + task.getStartTime() + " (" + ReportEntry.formatDuration(minutes * 60000) + ") "
+                + task.getProject() + ": " + task.getDescription());
+        return 0;
+    }
+    
+    /**
+     * Adds a finished task to a day.
+     */
+    private int add(List<String> params) {
+        if(params.size() < 5) {
+            throw new IllegalArgumentException("add needs a date, start and end time, a project and a description");
+        }
+        
+        Calendar day = ReportEngine.toCalendar(CommandLine.parseDate(params.get(0)));
+        Task task = new Task(params.get(3), String.join(" ", params.subList(4, params.size())));
+        task.setDateStart(day);
+        task.setDateEnd(day);
+        if(!task.setStartTime(params.get(1)) || !task.setEndTime(params.get(2))) {
+            throw new IllegalArgumentException("Times must be hh:mm");
+        }
+        
+        EditTaskFiles.createFile(EditTaskFiles.getDirectory(day), true);
+        EditTaskFiles.addTask(EditTaskFiles.getFilePath(day), task);
+        CommandLine.addProject(task.getProject());
+        this.out.println("Added " + task.getStartTime() + "-" + task.getEndTime() + " " + task.getProject() + ": " + task.getDescription());
+        return 0;
+    }
+    
+    /**
+     * Prints the tasks of a day.
+     */
+    private int list(List<String> params) {
+        Calendar day = ReportEngine.toCalendar(CommandLine.parseDate(params.isEmpty() ? "today" : params.get(0)));
+        long[] total = new long[1];
+        HistoryReader.forEachTask(day, (p, d, s, e) -> {
+            Task task = new Task(p, d, s, e);
+            this.out.println(task.getStartTime() + "-" + task.getEndTime() + "  " + p + ": " + d);
+            if(s != Task.UNSET && e != Task.UNSET) {
+                total[0] += e - s;
+            }
+        });
+        this.out.println("Total: " + ReportEntry.formatDuration(total[0]));
+        return 0;
+    }
+    
+    /**
+     * Prints the hours per period and project.
+     */
+    private int report(List<String> params) {
+        Map<String, String> options = CommandLine.parseOptions(params);
+        LocalDate from = CommandLine.parseDate(options.getOrDefault("from", LocalDate.now().withDayOfMonth(1).toString()));
+        LocalDate to = CommandLine.parseDate(options.getOrDefault("to", "today"));
+        ReportEngine.Period period = ReportEngine.Period.valueOf(options.getOrDefault("period", "TOTAL").toUpperCase(Locale.ROOT));
+        
+        long total = 0;
+        for(ReportEntry entry : ReportEngine.run(from, to, period)) {
+            this.out.println(String.format("%-10s %8s  %s", entry.getPeriod(), entry.getDuration(), entry.getProject()));
+            total += entry.getMillis();
+        }
+        this.out.println("Total: " + ReportEntry.formatDuration(total));
+        return 0;
+    }
+    
+    /**
+     * Writes tasks as CSV or JSON into a file or the standard output.
+     */
+    private int export(List<String> params) throws IOException {
+        Map<String, String> options = CommandLine.parseOptions(params);
+        LocalDate from = CommandLine.parseDate(options.getOrDefault("from", LocalDate.now().withDayOfMonth(1).toString()));
+        LocalDate to = CommandLine.parseDate(options.getOrDefault("to", "today"));
+        TaskExporter.Format format = TaskExporter.Format.valueOf(options.getOrDefault("format", "csv").toUpperCase(Locale.ROOT));
+        
+        String file = options.get("out");
+        try (OutputStream stream = (file != null) ? new BufferedOutputStream(new FileOutputStream(file)) : new NonClosingStream(this.out)) {
+            TaskExporter.export(from, to, options.get("project"), format, stream);
+        }
+        return 0;
+    }
+    
+    /**
+     * Serves the HTTP API until the process is killed.
+     * @param params [--port n]
+     * @return Exit code
+     */
+    private int serve(List<String> params) throws IOException {
+        Map<String, String> options = CommandLine.parseOptions(params);
+        int port = Integer.parseInt(options.getOrDefault("port", String.valueOf(HttpApi.DEFAULT_PORT)));
+        EditTaskFiles.createFile("./files/projectlist.txt");
+        ProjectIndex projects = new ProjectIndex("./files/projectlist.txt");
+        projects.load();
+        
+        HttpApi api = HttpApi.start(new TaskStore(projects), projects, port, null);
+        this.out.println("Serving on http://localhost:" + api.getPort() + "/");
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        api.stop();
+        return 0;
+    }
+    
+    /**
+     * Adds a project to the project list if it's new.
+     */
+    private static void addProject(String project) {
+        EditTaskFiles.createFile("./files/projectlist.txt");
+        ProjectIndex projects = new ProjectIndex("./files/projectlist.txt");
+        projects.load();
+        if(projects.add(project)) {
+            projects.persist(project);
+        }
+    }
+    
+    /**
+     * Parses a date in "yyyy-mm-dd" format, "today" or "yesterday".
+     */
+    private static LocalDate parseDate(String date) {
+        switch(date) {
+            case "today":
+                return LocalDate.now();
+            case "yesterday":
+                return LocalDate.now().minusDays(1);
+            default:
+                return LocalDate.parse(date);
+        }
+    }
+    
+    /**
+     * Parses options of the form "--key value".
+     */
+    private static Map<String, String> parseOptions(List<String> params) {
+        Map<String, String> options = new HashMap<>();
+        for(int i = 0; i < params.size(); i += 2) {
+            String key = params.get(i);
+            if(!key.startsWith("--") || key.length() == 2) {
+                throw new IllegalArgumentException("Unknown argument: " + key);
+            }
+            if(i + 1 >= params.size()) {
+                throw new IllegalArgumentException("Missing value of " + key);
+            }
+            options.put(key.substring(2), params.get(i + 1));
+        }
+        return options;
+    }
+    
+    /**
+     * Stream that flushes but doesn't close the standard output.
+     */
+    private static class NonClosingStream extends FilterOutputStream {
+        NonClosingStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            this.flush();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded in-memory cache of loaded days, keyed by the path of the day file.
+ * The least recently used day is evicted when the cache is full, and the garbage
+ * collector may drop entries under memory pressure. Writes invalidate the
+ * entry of their day, so a load that started before a write is never cached.
+ * Tasks are copied into and out of the cache, so a shown task which is changed
+ * (or whose change is rejected) never changes the cached day.
+ * @author Matthias Fischer
+ */
+public class DayCache {
+    
+    public static final String SETTING_SIZE = "dayCacheSize";
+    public static final int DEFAULT_SIZE = 31;
+    
+    private static int maxSize = DEFAULT_SIZE;
+    
+    private static final Map<String, SoftReference<List<Task>>> DAYS = new LinkedHashMap<String, SoftReference<List<Task>>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SoftReference<List<Task>>> eldest) {
+            return this.size() > maxSize;
+        }
+    };
+    private static final Map<String, Long> VERSIONS = new HashMap<>();
+    
+    /**
+     * Setter of the number of cached days
+     * @param size Maximum number of days
+     */
+    public static synchronized void setMaxSize(int size) {
+        maxSize = Math.max(1, size);
+        while(DAYS.size() > maxSize) {
+            DAYS.remove(DAYS.keySet().iterator().next());
+        }
+    }
+    
+    /**
+     * Returns the tasks of a day if they are cached.
+     * @param date Date of the day
+     * @return Copies of the cached tasks or null
+     */
+    public static synchronized List<Task> getIfPresent(Calendar date) {
+        SoftReference<List<Task>> ref = DAYS.get(EditTaskFiles.getFilePath(date));
+        List<Task> tasks = (ref != null) ? ref.get() : null;
+        return (tasks != null) ? DayCache.copy(tasks) : null;
+    }
+    
+    /**
+     * Returns the tasks of a day, they are read and cached if necessary.
+     * Must not be called on the JavaFX Application Thread.
+     * @param date Date of the day
+     * @return Copies of the cached tasks
+     */
+    public static List<Task> get(Calendar date) {
+        String path = EditTaskFiles.getFilePath(date);
+        Long version;
+        synchronized(DayCache.class) {
+            List<Task> tasks = DayCache.getIfPresent(date);
+            if(tasks != null) {
+                return tasks;
+            }
+            version = VERSIONS.get(path);
+        }
+        
+        List<Task> tasks = HistoryReader.readDay(date);
+        synchronized(DayCache.class) {
+            if(version == null ? !VERSIONS.containsKey(path) : version.equals(VERSIONS.get(path))) {
+                DAYS.put(path, new SoftReference<>(DayCache.copy(tasks)));
+            }
+        }
+        return tasks;
+    }
+    
+    /**
+     * Loads the days before and after a date in the background, if they are not cached.
+     * @param date Date of the shown day
+     */
+    public static void prefetch(Calendar date) {
+        for(int offset = -1; offset <= 1; offset += 2) {
+            Calendar day = (Calendar)date.clone();
+            day.add(Calendar.DAY_OF_MONTH, offset);
+            if(DayCache.getIfPresent(day) == null) {
+                AsyncPersistence.read(() -> DayCache.get(day)).exceptionally(AsyncPersistence::log);
+            }
+        }
+    }
+    
+    /**
+     * Removes a day from the cache, because its file was changed.
+     * @param path Path to the day file
+     */
+    public static synchronized void invalidate(String path) {
+        DAYS.remove(path);
+        Long version = VERSIONS.get(path);
+        VERSIONS.put(path, (version != null) ? version + 1 : 0L);
+    }
+    
+    /**
+     * Replaces the cached tasks of a day, because its file was changed to known tasks.
+     * @param path Path to the day file
+     * @param tasks New tasks of the day
+     */
+    public static synchronized void put(String path, List<Task> tasks) {
+        DayCache.invalidate(path);
+        DAYS.put(path, new SoftReference<>(DayCache.copy(tasks)));
+    }
+    
+    /**
+     * Copies a list of tasks and the tasks in it.
+     * @param tasks Tasks
+     * @return Copies of the tasks
+     */
+    private static List<Task> copy(List<Task> tasks) {
+        List<Task> copy = new ArrayList<>(tasks.size());
+        for(Task task : tasks) {
+            copy.add(task.copy());
+        }
+        return copy;
+    }
+}
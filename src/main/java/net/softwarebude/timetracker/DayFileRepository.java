@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Repository of the day files, e.g. ./files/2016/08/2016-08-25.txt
+ * Only the year and month directories which overlap a range are listed, each of them once.
+ * Past months are read and counted out of their month segments, see HistoryReader.
+ * @author Matthias Fischer
+ */
+public class DayFileRepository implements TaskRepository {
+    
+    private static final File ROOT = new File("./files");
+    private static final Pattern DAY = Pattern.compile("\\d{4}-\\d{2}-\\d{2}(\\.txt|" + Pattern.quote(TaskJournal.EXTENSION) + ")");
+    
+    @Override
+    public List<LocalDate> days(LocalDate from, LocalDate to) {
+        List<LocalDate> days = new ArrayList<>();
+        for(File year : DayFileRepository.list(ROOT, 4)) {
+            int y = Integer.parseInt(year.getName());
+            if(y < from.getYear() || y > to.getYear()) {
+                continue;
+            }
+            
+            for(File month : DayFileRepository.list(year, 2)) {
+                int m = Integer.parseInt(month.getName());
+                if(m < 1 || m > 12) {
+                    continue;
+                }
+                
+                String[] names = month.list((dir, name) -> DAY.matcher(name).matches());
+                Set<LocalDate> found = new TreeSet<>();
+                for(String name : (names != null) ? names : new String[0]) {
+                    try {
+                        LocalDate day = LocalDate.parse(name.substring(0, 10));
+                        if(day.getYear() == y && day.getMonthValue() == m && !day.isBefore(from) && !day.isAfter(to)) {
+                            found.add(day);
+                        }
+                    } catch (DateTimeParseException e) {
+                        System.err.println("No day file: " + name);
+                    }
+                }
+                days.addAll(found);
+            }
+        }
+        return days;
+    }
+    
+    @Override
+    public int forEachOfDay(LocalDate day, TaskCodec.TaskConsumer consumer) {
+        return HistoryReader.forEachTask(ReportEngine.toCalendar(day), consumer);
+    }
+    
+    @Override
+    public int countOfDay(LocalDate day) {
+        return HistoryReader.countTasks(ReportEngine.toCalendar(day));
+    }
+    
+    @Override
+    public List<Task> findByDay(LocalDate day) {
+        return HistoryReader.readDay(ReportEngine.toCalendar(day));
+    }
+    
+    /**
+     * Lists the subdirectories with a numeric name of a given length, sorted by name.
+     * @param dir Parent directory
+     * @param length Length of the names
+     * @return Sorted directories
+     */
+    private static File[] list(File dir, int length) {
+        File[] dirs = dir.listFiles(f -> f.isDirectory() && f.getName().length() == length && f.getName().chars().allMatch(Character::isDigit));
+        if(dirs == null) {
+            return new File[0];
+        }
+        Arrays.sort(dirs);
+        return dirs;
+    }
+}
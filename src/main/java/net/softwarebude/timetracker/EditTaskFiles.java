@@ -23,7 +23,16 @@
  */
 package net.softwarebude.timetracker;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import net.softwarebude.io.EditFiles;
@@ -40,12 +49,112 @@ public class EditTaskFiles extends EditFiles {
      * @param data Tasks that should be saved
      */
     public static void saveTasks(String path, ObservableList<Task> data) {
+        Metrics.Timer timer = Metrics.start("day.save");
         ObservableList<String> list = FXCollections.observableArrayList();
+        StringBuilder row = new StringBuilder(128);
         for(int i = 0; i < data.size(); i++) {
-            list.add(data.get(i).toFileString());
+            row.setLength(0);
+            list.add(TaskCodec.encode(data.get(i), row).toString());
         }
         
-        EditTaskFiles.saveFile(path, list);
+        try {
+            TaskJournal.rewrite(path, list);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        HistoryReader.invalidate(path);
+        DayCache.invalidate(path);
+        SearchIndex.update(path, data);
+        timer.stop();
+    }
+    
+    /**
+     * Reads the task rows of a specific file including changes of its journal.
+     * @param path Path to file
+     * @return Task rows as Strings
+     */
+    public static List<String> readTasks(String path) {
+        return TaskJournal.read(path);
+    }
+    
+    /**
+     * Adds a task to a specific file. Only the task itself is written.
+     * @param path Path to file
+     * @param task Task that should be added
+     */
+    public static void addTask(String path, Task task) {
+        Metrics.Timer timer = Metrics.start("day.add");
+        TaskJournal.add(path, task);
+        HistoryReader.invalidate(path);
+        DayCache.invalidate(path);
+        SearchIndex.update(path, Collections.singletonList(task));
+        timer.stop();
+    }
+    
+    /**
+     * Removes a task from a specific file. Only the removal is written.
+     * @param path Path to file
+     * @param task Task that should be removed
+     */
+    public static void removeTask(String path, Task task) {
+        Metrics.Timer timer = Metrics.start("day.remove");
+        TaskJournal.remove(path, task);
+        HistoryReader.invalidate(path);
+        DayCache.invalidate(path);
+        timer.stop();
+    }
+    
+    /**
+     * Replaces an edited task in a specific file. Only the change is written.
+     * @param path Path to file
+     * @param oldFileString File string of the task before it was edited
+     * @param task Edited task
+     */
+    public static void replaceTask(String path, String oldFileString, Task task) {
+        Metrics.Timer timer = Metrics.start("day.replace");
+        TaskJournal.replace(path, oldFileString, task);
+        HistoryReader.invalidate(path);
+        DayCache.invalidate(path);
+        SearchIndex.update(path, Collections.singletonList(task));
+        timer.stop();
+    }
+    
+    /**
+     * Replaces a file durably. The rows are written into a temporary file, which is forced
+     * to disk together with other writes and renamed over the file afterwards, so a crash
+     * leaves either the old or the new content. Hides EditFiles.saveFile, which overwrites
+     * the file in place. Errors are only logged, see replaceFile.
+     * @param path Path to the file
+     * @param rows Rows of the file
+     */
+    public static void saveFile(String path, ObservableList<String> rows) {
+        try {
+            EditTaskFiles.replaceFile(path, rows, false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Replaces a file like saveFile, but reports errors. If an exception is thrown,
+     * the old content of the file is unchanged.
+     * @param path Path to the file
+     * @param rows Rows of the file
+     * @param awaitDirectory Boolean if the rename is forced to disk before the method returns,
+     * e.g. before a file whose content is now contained in the new file is deleted
+     * @throws IOException if the temporary file can't be written, forced or renamed
+     */
+    public static void replaceFile(String path, List<String> rows, boolean awaitDirectory) throws IOException {
+        Path target = Paths.get(path);
+        Path tmp = Paths.get(path + ".tmp");
+        Files.write(tmp, rows, Charset.defaultCharset());
+        GroupCommit.await(tmp);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if(awaitDirectory) {
+            GroupCommit.await(target.toAbsolutePath().getParent());
+        } else {
+            GroupCommit.sync(target.toAbsolutePath().getParent());
+        }
     }
     
     /**
@@ -80,4 +189,13 @@ public class EditTaskFiles extends EditFiles {
     public static String getFilePath(Calendar date) {
         return EditTaskFiles.getDirectory(date) + EditTaskFiles.getFilename(date) + ".txt";
     }
+    
+    /**
+     * Checks if a day has tasks on disk. A new day may only have a journal until it is compacted.
+     * @param path Path to the day file
+     * @return Boolean
+     */
+    public static boolean existsDay(String path) {
+        return new File(path).exists() || new File(TaskJournal.getJournalPath(path)).exists();
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.time.LocalDate;
+import java.util.ResourceBundle;
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.DatePicker;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.stage.FileChooser;
+
+/**
+ * FXML Controller class for the Export dialog
+ *
+ * @author Matthias Fischer
+ */
+public class ExportController implements Initializable {
+    
+    @FXML private DatePicker dpFrom;
+    @FXML private DatePicker dpTo;
+    @FXML private TextField tfProject;
+    @FXML private ChoiceBox<TaskExporter.Format> cbFormat;
+    @FXML private Button btnExport;
+    @FXML private Label lblResult;
+    
+    /**
+     * Initializes the controller class.
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle rb) {
+        this.dpFrom.setValue(LocalDate.now().withDayOfMonth(1));
+        this.dpTo.setValue(LocalDate.now());
+        this.cbFormat.setItems(FXCollections.observableArrayList(TaskExporter.Format.values()));
+        this.cbFormat.setValue(TaskExporter.Format.CSV);
+    }
+    
+    /**
+     * Handler for the button export. It writes the tasks of the range in the background.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleButtonExport(ActionEvent event) {
+        LocalDate from = this.dpFrom.getValue();
+        LocalDate to = this.dpTo.getValue();
+        String project = this.tfProject.getText().trim();
+        TaskExporter.Format format = this.cbFormat.getValue();
+        if(from == null || to == null || to.isBefore(from)) {
+            return;
+        }
+        
+        String extension = format.name().toLowerCase();
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(format.name(), "*." + extension));
+        fileChooser.setTitle("Export Tasks");
+        fileChooser.setInitialFileName(from + "_" + to + "." + extension);
+        
+        File exportFile = fileChooser.showSaveDialog(this.btnExport.getScene().getWindow());
+        if(exportFile == null) {
+            return;
+        }
+        
+        this.btnExport.setDisable(true);
+        this.lblResult.setText("Exporting...");
+        AsyncPersistence.read(() -> {
+            Metrics.Timer timer = Metrics.start("export.tasks");
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(exportFile))) {
+                return TaskExporter.export(from, to, project, format, out);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                timer.stop();
+            }
+        }).thenAcceptAsync(count -> {
+            this.lblResult.setText(count + " tasks exported");
+            this.btnExport.setDisable(false);
+        }, AsyncPersistence.FX).exceptionally(e -> {
+            AsyncPersistence.FX.execute(() -> {
+                this.lblResult.setText("Export failed");
+                this.btnExport.setDisable(false);
+            });
+            return AsyncPersistence.log(e);
+        });
+    }
+}
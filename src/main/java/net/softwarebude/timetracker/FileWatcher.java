@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Watches directories for created, modified and deleted files. One daemon thread serves all
+ * directories and calls the listeners with the path of the changed file. If events were lost,
+ * the listeners are called with the directory itself. Listeners run on the watcher thread and
+ * should hand longer work over to another thread.
+ * @author Matthias Fischer
+ */
+public class FileWatcher {
+    
+    private static final Map<WatchKey, List<Consumer<Path>>> LISTENERS = new ConcurrentHashMap<>();
+    private static WatchService service;
+    
+    FileWatcher() {
+    }
+    
+    /**
+     * Watches a directory (not its subdirectories).
+     * @param directory Directory
+     * @param listener Listener which gets the path of the changed file
+     * @throws IOException If the directory can't be watched
+     */
+    public static synchronized void watch(Path directory, Consumer<Path> listener) throws IOException {
+        if(service == null) {
+            service = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(FileWatcher::run, "file-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        WatchKey key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        LISTENERS.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+    
+    /**
+     * Dispatches the events until the thread ends.
+     */
+    private static void run() {
+        while(true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            
+            Path directory = (Path) key.watchable();
+            List<Consumer<Path>> listeners = LISTENERS.get(key);
+            for(WatchEvent<?> event : key.pollEvents()) {
+                Path changed = (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        ? directory : directory.resolve((Path) event.context());
+                if(listeners != null) {
+                    for(Consumer<Path> listener : listeners) {
+                        try {
+                            listener.accept(changed);
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+            
+            if(!key.reset()) {
+                LISTENERS.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock of the files directory, which is shared by all processes working on the same files
+ * (the application, the command line and the HTTP API), e.g. ./files/.lock
+ * Every write of day files, journals and the project list holds it, so a compaction never
+ * loses the journal records of another process. Within a process it is reentrant and held
+ * by one thread at a time. It is always taken before the locks of TaskJournal and Rollups.
+ * Reads don't take it, the files are replaced atomically and journal records are appended.
+ * @author Matthias Fischer
+ */
+public class FilesLock {
+    
+    private static final String PATH = "./files/.lock";
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    
+    private static FileChannel channel;
+    private static FileLock fileLock;
+    
+    /**
+     * Operation which runs while the lock is held.
+     * @param <T> Type of the result
+     */
+    public interface Locked<T> {
+        
+        /**
+         * Runs the operation.
+         * @return Result of the operation
+         * @throws IOException if a file operation fails
+         */
+        T run() throws IOException;
+    }
+    
+    FilesLock() {
+    }
+    
+    /**
+     * Runs an operation while holding the lock.
+     * @param <T> Type of the result
+     * @param operation Operation to run
+     * @return Result of the operation
+     * @throws IOException if the lock or the operation fails
+     */
+    public static <T> T locked(Locked<T> operation) throws IOException {
+        FilesLock.lock();
+        try {
+            return operation.run();
+        } finally {
+            FilesLock.unlock();
+        }
+    }
+    
+    /**
+     * Runs a write while holding the lock.
+     * @param write Write of files
+     * @throws UncheckedIOException if the lock can't be taken
+     */
+    public static void run(Runnable write) {
+        try {
+            FilesLock.lock();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            write.run();
+        } finally {
+            FilesLock.unlock();
+        }
+    }
+    
+    /**
+     * Takes the lock. The file is locked when the current thread takes the lock the first time.
+     * @throws IOException if the lock file can't be locked
+     */
+    private static void lock() throws IOException {
+        LOCK.lock();
+        if(LOCK.getHoldCount() > 1) {
+            return;
+        }
+        
+        try {
+            EditTaskFiles.createFile("./files", true);
+            channel = FileChannel.open(Paths.get(PATH), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            fileLock = channel.lock();
+        } catch (IOException | RuntimeException e) {
+            FilesLock.close();
+            LOCK.unlock();
+            throw e;
+        }
+    }
+    
+    /**
+     * Releases the lock. The file is unlocked when the current thread releases its last hold.
+     */
+    private static void unlock() {
+        try {
+            if(LOCK.getHoldCount() == 1) {
+                FilesLock.close();
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+    
+    /**
+     * Releases the file lock and closes the lock file.
+     */
+    private static void close() {
+        try {
+            if(fileLock != null) {
+                fileLock.release();
+            }
+            if(channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            fileLock = null;
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Forces written files to disk in groups. Files which are handed over while a group is
+ * forced wait for the next group, so writes close together share one fsync window
+ * instead of paying one fsync each. The files of a group are forced in parallel,
+ * which lets the file system combine them into one journal commit.
+ * @author Matthias Fischer
+ */
+public class GroupCommit {
+    
+    private static final Map<Path, CompletableFuture<Void>> PENDING = new LinkedHashMap<>();
+    private static final ExecutorService SYNCER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "group-commit");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final LongAdder GROUPS = Metrics.counter("fsync.groups");
+    private static final LongAdder FILES = Metrics.counter("fsync.files");
+    
+    private static CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+    private static boolean scheduled;
+    
+    GroupCommit() {
+    }
+    
+    /**
+     * Forces a file or directory to disk with the next group.
+     * @param file File or directory
+     * @return Future which completes after the file was forced
+     */
+    public static synchronized CompletableFuture<Void> sync(Path file) {
+        CompletableFuture<Void> future = PENDING.get(file);
+        if(future == null) {
+            future = new CompletableFuture<>();
+            PENDING.put(file, future);
+        }
+        if(!scheduled) {
+            scheduled = true;
+            last = CompletableFuture.runAsync(GroupCommit::commit, SYNCER);
+        }
+        return future;
+    }
+    
+    /**
+     * Forces a file to disk with the next group and waits for it, e.g. before it is renamed.
+     * @param file File
+     * @throws IOException if the file can't be forced
+     */
+    public static void await(Path file) throws IOException {
+        try {
+            GroupCommit.sync(file).join();
+        } catch (CompletionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+    
+    /**
+     * Waits until all handed over files are forced, e.g. before the application ends.
+     */
+    public static void flush() {
+        CompletableFuture<Void> group;
+        synchronized(GroupCommit.class) {
+            group = last;
+        }
+        
+        try {
+            group.get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Forces all files which were handed over until now.
+     */
+    private static void commit() {
+        Map<Path, CompletableFuture<Void>> group;
+        synchronized(GroupCommit.class) {
+            group = new LinkedHashMap<>(PENDING);
+            PENDING.clear();
+            scheduled = false;
+        }
+        
+        Metrics.time("fsync.group", () -> group.entrySet().parallelStream().forEach(entry -> {
+            try {
+                GroupCommit.force(entry.getKey());
+                entry.getValue().complete(null);
+            } catch (IOException e) {
+                entry.getValue().completeExceptionally(e);
+            }
+        }));
+        GROUPS.increment();
+        FILES.add(group.size());
+    }
+    
+    /**
+     * Forces one file or directory. A file which was deleted meanwhile has nothing to force,
+     * and directories can't be opened on every platform.
+     * @param file File or directory
+     * @throws IOException if the file can't be forced
+     */
+    private static void force(Path file) throws IOException {
+        boolean directory = Files.isDirectory(file);
+        try (FileChannel channel = FileChannel.open(file, directory ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (NoSuchFileException e) {
+            // deleted, e.g. a compacted journal
+        } catch (IOException e) {
+            if(!directory) {
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Fills the files directory in the working directory with a synthetic history.
+ * Projects and descriptions are chosen out of generated vocabularies with a skewed
+ * distribution, so a few projects and words are used much more often than the rest.
+ * Usage: HistoryGenerator [--years 10] [--tasks 40] [--projects 200] [--words 500]
+ * [--end yyyy-mm-dd] [--weekends false] [--seed 1]
+ * @author Matthias Fischer
+ */
+public class HistoryGenerator {
+    
+    private static final String[] SYLLABLES = { "ka", "lo", "mi", "ne", "ru", "ta", "vo", "shi", "den", "bar", "tek", "mon", "ix", "por", "gal", "ven" };
+    private static final long MINUTE = 60 * 1000L;
+    
+    private final Random random;
+    private final String[] projects;
+    private final String[] words;
+    
+    /**
+     * Constructor of a generator
+     * @param projects Number of different projects
+     * @param words Size of the description vocabulary
+     * @param seed Seed of the random numbers
+     */
+    public HistoryGenerator(int projects, int words, long seed) {
+        this.random = new Random(seed);
+        this.words = this.createWords(words);
+        this.projects = new String[projects];
+        for(int i = 0; i < projects; i++) {
+            this.projects[i] = Character.toUpperCase(this.words[i % words].charAt(0)) + this.words[i % words].substring(1) + " " + i;
+        }
+    }
+    
+    public static void main(String[] args) {
+        Map<String, String> options = HistoryGenerator.parseArgs(args);
+        int years = Integer.parseInt(options.getOrDefault("years", "10"));
+        int tasks = Integer.parseInt(options.getOrDefault("tasks", "40"));
+        LocalDate end = LocalDate.parse(options.getOrDefault("end", LocalDate.now().toString()));
+        
+        HistoryGenerator generator = new HistoryGenerator(Integer.parseInt(options.getOrDefault("projects", "200")),
+                Integer.parseInt(options.getOrDefault("words", "500")), Long.parseLong(options.getOrDefault("seed", "1")));
+        
+        long time = System.currentTimeMillis();
+        int days = generator.generate(end.minusYears(years).plusDays(1), end, tasks, Boolean.parseBoolean(options.getOrDefault("weekends", "false")));
+        System.out.println(days + " days with " + tasks + " tasks written in " + (System.currentTimeMillis() - time) + " ms");
+    }
+    
+    /**
+     * Writes the days of a range. Existing days are replaced.
+     * @param from First day
+     * @param to Last day (inclusive)
+     * @param tasksPerDay Number of tasks per day
+     * @param weekends Also write saturdays and sundays
+     * @return Number of written days
+     */
+    public int generate(LocalDate from, LocalDate to, int tasksPerDay, boolean weekends) {
+        ProjectIndex index = new ProjectIndex("./files/projectlist.txt");
+        EditTaskFiles.createFile("./files/projectlist.txt");
+        index.load();
+        
+        int days = 0;
+        for(LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            if(!weekends && (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY)) {
+                continue;
+            }
+            
+            Calendar date = ReportEngine.toCalendar(day);
+            ObservableList<Task> tasks = this.createDay(date, tasksPerDay);
+            EditTaskFiles.createFile(EditTaskFiles.getDirectory(date), true);
+            EditTaskFiles.saveTasks(EditTaskFiles.getFilePath(date), tasks);
+            for(Task task : tasks) {
+                if(index.add(task.getProject())) {
+                    index.persist(task.getProject());
+                }
+            }
+            days++;
+        }
+        return days;
+    }
+    
+    /**
+     * Creates the tasks of a working day, starting at 8:00 without gaps.
+     * @param date Day of the tasks
+     * @param count Number of tasks
+     * @return Tasks in start order
+     */
+    public ObservableList<Task> createDay(Calendar date, int count) {
+        ObservableList<Task> tasks = FXCollections.observableArrayList();
+        long start = date.getTimeInMillis() + 8 * 60 * MINUTE;
+        long average = Math.max(1, 10 * 60 / Math.max(count, 1));
+        for(int i = 0; i < count; i++) {
+            long length = (1 + this.random.nextInt((int) average * 2)) * MINUTE;
+            tasks.add(new Task(this.pick(this.projects), this.createDescription(), start, start + length));
+            start += length;
+        }
+        return tasks;
+    }
+    
+    /**
+     * Creates a description out of two to six words.
+     */
+    private String createDescription() {
+        int length = 2 + this.random.nextInt(5);
+        StringBuilder description = new StringBuilder();
+        for(int i = 0; i < length; i++) {
+            description.append((i > 0) ? " " : "").append(this.pick(this.words));
+        }
+        return description.toString();
+    }
+    
+    /**
+     * Picks an element with a skewed distribution towards the first elements.
+     */
+    private String pick(String[] values) {
+        double r = this.random.nextDouble();
+        return values[(int) (r * r * r * values.length)];
+    }
+    
+    /**
+     * Creates distinct words out of syllables.
+     */
+    private String[] createWords(int count) {
+        List<String> words = new ArrayList<>(count);
+        for(int i = 0; words.size() < count; i++) {
+            StringBuilder word = new StringBuilder();
+            for(int n = i; n > 0 || word.length() == 0; n /= SYLLABLES.length) {
+                word.append(SYLLABLES[n % SYLLABLES.length]);
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[count]);
+    }
+    
+    /**
+     * Parses arguments of the form "--key value".
+     * @param args Command line arguments
+     * @return Options by key
+     */
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            if(!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read path for tasks of past months. A past month is converted once into its
+ * segment file, which is then memory-mapped and decoded day by day. Months are
+ * opened lazily on first access and only a limited number of them stay mapped.
+ * Days of the current month are read from the day files.
+ * @author Matthias Fischer
+ */
+public class HistoryReader {
+    
+    private static final int MAX_OPEN_MONTHS = 24;
+    
+    private static final Map<String, MonthSegment> OPEN = new LinkedHashMap<String, MonthSegment>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MonthSegment> eldest) {
+            return this.size() > MAX_OPEN_MONTHS;
+        }
+    };
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    
+    /**
+     * Reads the tasks of a day.
+     * @param date Date of the day
+     * @return Tasks of the day
+     */
+    public static List<Task> readDay(Calendar date) {
+        if(HistoryReader.isHistory(date)) {
+            try {
+                return HistoryReader.open(date).readDay(date.get(Calendar.DAY_OF_MONTH));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        
+        return TaskCodec.local().readDay(EditTaskFiles.getFilePath(date));
+    }
+    
+    /**
+     * Decodes the tasks of a day without creating Task objects.
+     * @param date Date of the day
+     * @param consumer Receives the tasks
+     * @return Number of tasks
+     */
+    public static int forEachTask(Calendar date, TaskCodec.TaskConsumer consumer) {
+        if(HistoryReader.isHistory(date)) {
+            try {
+                return HistoryReader.open(date).forEachTask(date.get(Calendar.DAY_OF_MONTH), consumer);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        
+        return TaskCodec.local().forEachTask(EditTaskFiles.getFilePath(date), consumer);
+    }
+    
+    /**
+     * Counts the tasks of a day. Past months take the count out of the day table of their segment.
+     * @param date Date of the day
+     * @return Number of tasks
+     */
+    public static int countTasks(Calendar date) {
+        if(HistoryReader.isHistory(date)) {
+            try {
+                return HistoryReader.open(date).getTaskCount(date.get(Calendar.DAY_OF_MONTH));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        
+        return TaskCodec.local().forEachTask(EditTaskFiles.getFilePath(date), (p, d, s, e) -> { });
+    }
+    
+    /**
+     * Unmaps the segment of the month of a changed day file. Its manifest doesn't match
+     * the changed files anymore, so it is rebuilt when the month is opened again.
+     * @param dayPath Path to the changed day file
+     */
+    public static void invalidate(String dayPath) {
+        String directory = dayPath.substring(0, dayPath.lastIndexOf('/') + 1);
+        synchronized(OPEN) {
+            OPEN.remove(directory);
+        }
+    }
+    
+    /**
+     * Checks if a date belongs to a month before the current one.
+     * @param date Date to check
+     * @return Boolean
+     */
+    private static boolean isHistory(Calendar date) {
+        Calendar now = Calendar.getInstance();
+        int month = date.get(Calendar.YEAR) * 12 + date.get(Calendar.MONTH);
+        return month < now.get(Calendar.YEAR) * 12 + now.get(Calendar.MONTH);
+    }
+    
+    /**
+     * Returns the mapped segment of a month. It is built out of the day files
+     * if it is missing or its manifest doesn't match them anymore.
+     * @param date Date of the month
+     * @return Segment
+     * @throws IOException if the segment can't be built or mapped
+     */
+    private static MonthSegment open(Calendar date) throws IOException {
+        String directory = EditTaskFiles.getDirectory(date);
+        synchronized(LOCKS.computeIfAbsent(directory, d -> new Object())) {
+            MonthSegment segment;
+            synchronized(OPEN) {
+                segment = OPEN.get(directory);
+            }
+            
+            if(segment == null) {
+                String path = MonthSegment.getSegmentPath(date);
+                if(!MonthManifest.isUpToDate(MonthSegment.readManifest(path), new File(directory), MonthManifest.TASK_FILES)) {
+                    path = MonthSegment.fromTextFiles(date);
+                }
+                
+                segment = MonthSegment.map(path);
+                synchronized(OPEN) {
+                    OPEN.put(directory, segment);
+                }
+            }
+            return segment;
+        }
+    }
+}
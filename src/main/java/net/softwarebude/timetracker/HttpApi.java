@@ -0,0 +1,622 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Small HTTP interface with JSON responses for scripts and IDE plugins, bound to localhost.
+ * GET  /status                                  the running task
+ * POST /start {"project":..,"description":..}   starts a task, a running task is stopped first
+ * POST /stop {}                                 stops the running task and saves it
+ * GET  /tasks?date=yyyy-mm-dd                   tasks of a day, default today
+ * GET  /report?from=..&amp;to=..&amp;period=..          hours per period and project
+ * GET  /projects?prefix=..&amp;limit=..             project suggestions
+ * A POST takes its parameters only as a flat JSON object (Content-Type: application/json),
+ * which a web page can't send to another origin without asking first. Requests with an
+ * Origin header or a Host other than localhost or 127.0.0.1 with the bound port are
+ * rejected, so neither a web page nor a DNS rebinding can use the API.
+ * Requests run on virtual threads if the JVM has them, else on a thread pool.
+ * Writes go through the writer thread of AsyncPersistence, so they are serialized with
+ * the writes of the window. The running task is the one of the command line, it is
+ * only changed while holding the lock of the files.
+ * @author Matthias Fischer
+ */
+public class HttpApi {
+    
+    public static final String SETTING_ENABLED = "httpApi";
+    public static final String SETTING_PORT = "httpPort";
+    public static final int DEFAULT_PORT = 8734;
+    
+    private static final String PROPERTY_NODELAY = "sun.net.httpserver.nodelay";
+    private static final int THREADS = 16;
+    private static final int BACKLOG = 128;
+    private static final int DEFAULT_SUGGESTIONS = 10;
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final int MAX_BODY = 64 * 1024;
+    private static final List<String> PATHS = Arrays.asList("/status", "/start", "/stop", "/tasks", "/report", "/projects");
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final TaskStore store;
+    private final ProjectIndex projects;
+    private final Consumer<String> listener;
+    
+    /**
+     * Constructor
+     * @param server Bound server
+     * @param store Store of the days
+     * @param projects Project list
+     * @param listener Receives the paths of changed day files, may be null
+     */
+    private HttpApi(HttpServer server, TaskStore store, ProjectIndex projects, Consumer<String> listener) {
+        this.server = server;
+        this.executor = HttpApi.newExecutor();
+        this.store = store;
+        this.projects = projects;
+        this.listener = listener;
+    }
+    
+    /**
+     * Starts a server on the loopback interface.
+     * @param store Store of the days, e.g. the one of the window
+     * @param projects Project list of the store
+     * @param port Port, 0 for any free port
+     * @param listener Receives the paths of day files changed by a request, may be null
+     * @return Running server
+     * @throws IOException if the port can't be bound
+     */
+    public static HttpApi start(TaskStore store, ProjectIndex projects, int port, Consumer<String> listener) throws IOException {
+        // headers and body are sent separately, without TCP_NODELAY every response waits for the delayed ACK
+        if(System.getProperty(PROPERTY_NODELAY) == null) {
+            System.setProperty(PROPERTY_NODELAY, "true");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        HttpApi api = new HttpApi(server, store, projects, listener);
+        server.createContext("/", api::handle);
+        server.setExecutor(api.executor);
+        server.start();
+        return api;
+    }
+    
+    /**
+     * Stops the server. Running requests are not waited for.
+     */
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdown();
+    }
+    
+    /**
+     * Getter of the bound port
+     * @return Port
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+    
+    /**
+     * Creates an executor with one virtual thread per request, or a thread pool on JVMs without them.
+     * @return Executor
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(THREADS, r -> {
+                Thread t = new Thread(r, "http-api");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+    
+    /**
+     * Answers one request.
+     * @param exchange Request and response
+     * @throws IOException if the response can't be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String path = exchange.getRequestURI().getPath();
+        int status = 200;
+        String body;
+        try {
+            if(!this.isLocal(exchange)) {
+                status = 403;
+                body = HttpApi.error("Forbidden");
+            } else {
+                body = this.route(exchange.getRequestMethod() + " " + path, HttpApi.readParams(exchange));
+            }
+        } catch (FileNotFoundException e) {
+            status = PATHS.contains(path) ? 405 : 404;
+            body = HttpApi.error(status == 405 ? "Method not allowed" : "Not found");
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            status = 400;
+            body = HttpApi.error(e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = 500;
+            body = HttpApi.error(e.toString());
+        }
+        
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        Metrics.record("http.request", System.nanoTime() - start);
+    }
+    
+    /**
+     * Checks that a request comes from a local program and not from a web page.
+     * @param exchange Request
+     * @return Boolean if the request has no Origin header and a Host of the loopback address
+     */
+    private boolean isLocal(HttpExchange exchange) {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        int port = this.getPort();
+        return exchange.getRequestHeaders().getFirst("Origin") == null
+                && (("localhost:" + port).equalsIgnoreCase(host) || ("127.0.0.1:" + port).equals(host));
+    }
+    
+    /**
+     * Runs the operation of a request.
+     * @param request Method and path, e.g. "GET /status"
+     * @param params Parameters of the request
+     * @return JSON response
+     * @throws FileNotFoundException if there is no operation for the request
+     * @throws Exception if the operation fails
+     */
+    private String route(String request, Map<String, String> params) throws Exception {
+        switch(request) {
+            case "GET /status":
+                return HttpApi.task(RunningTask.read());
+            case "POST /start":
+                return HttpApi.task(this.startTask(HttpApi.required(params, "project"), HttpApi.required(params, "description")));
+            case "POST /stop":
+                return HttpApi.task(this.stopTask());
+            case "GET /tasks":
+                return this.tasks(HttpApi.date(params, "date", LocalDate.now()));
+            case "GET /report":
+                return this.report(params);
+            case "GET /projects":
+                return this.projects(params.getOrDefault("prefix", ""), Integer.parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_SUGGESTIONS))));
+            default:
+                throw new FileNotFoundException(request);
+        }
+    }
+    
+    /**
+     * Starts a task. A running task is stopped and saved before.
+     * @param project Project name
+     * @param description Task description
+     * @return Started task
+     */
+    private Task startTask(String project, String description) throws Exception {
+        return this.write(() -> {
+            this.saveRunning();
+            long now = System.currentTimeMillis();
+            Task task = new Task(project, description, now, now);
+            RunningTask.write(task);
+            return task;
+        });
+    }
+    
+    /**
+     * Stops the running task and saves it into the file of its start day.
+     * @return Stopped task or null, if no task was running
+     */
+    private Task stopTask() throws Exception {
+        return this.write(this::saveRunning);
+    }
+    
+    /**
+     * Saves the running task into the file of its start day and removes it.
+     * It runs on the writer thread, so the task is appended directly instead of queued,
+     * which keeps the running task until its day file is written.
+     * @return Stopped task or null, if no task was running
+     * @throws IOException if a file can't be written
+     */
+    private Task saveRunning() throws IOException {
+        Task task = RunningTask.stop();
+        if(task != null) {
+            this.store.addProject(task.getProject());
+            if(this.listener != null) {
+                this.listener.accept(RunningTask.getDayPath(task));
+            }
+        }
+        return task;
+    }
+    
+    /**
+     * Lists the tasks of a day.
+     * @param date Day
+     * @return JSON object with the tasks and their total minutes
+     */
+    private String tasks(LocalDate date) throws Exception {
+        List<Task> tasks = HttpApi.await(this.store.load(ReportEngine.toCalendar(date)));
+        StringWriter out = new StringWriter();
+        long total = 0;
+        out.write("{\"date\":\"" + date + "\",\"tasks\":[");
+        for(int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            out.write((i > 0) ? "," : "");
+            HttpApi.writeTask(out, task);
+            if(task.getStartMillis() != Task.UNSET && task.getEndMillis() != Task.UNSET) {
+                total += task.getEndMillis() - task.getStartMillis();
+            }
+        }
+        out.write("],\"minutes\":" + total / 60000 + "}");
+        return out.toString();
+    }
+    
+    /**
+     * Creates a report of the hours per period and project.
+     * @param params from, to (default: this month) and period (default: TOTAL)
+     * @return JSON object with the report lines and the total minutes
+     */
+    private String report(Map<String, String> params) throws Exception {
+        LocalDate from = HttpApi.date(params, "from", LocalDate.now().withDayOfMonth(1));
+        LocalDate to = HttpApi.date(params, "to", LocalDate.now());
+        ReportEngine.Period period = ReportEngine.Period.valueOf(params.getOrDefault("period", "TOTAL").toUpperCase(Locale.ROOT));
+        
+        List<ReportEntry> entries = HttpApi.await(AsyncPersistence.read(() -> ReportEngine.run(from, to, period)));
+        StringWriter out = new StringWriter();
+        long total = 0;
+        out.write("{\"from\":\"" + from + "\",\"to\":\"" + to + "\",\"entries\":[");
+        for(int i = 0; i < entries.size(); i++) {
+            ReportEntry entry = entries.get(i);
+            out.write((i > 0) ? ",{\"period\":" : "{\"period\":");
+            TaskExporter.writeJsonString(out, entry.getPeriod());
+            out.write(",\"project\":");
+            TaskExporter.writeJsonString(out, entry.getProject());
+            out.write(",\"minutes\":" + entry.getMillis() / 60000 + "}");
+            total += entry.getMillis();
+        }
+        out.write("],\"minutes\":" + total / 60000 + "}");
+        return out.toString();
+    }
+    
+    /**
+     * Suggests projects for a prefix.
+     * @param prefix Typed text, empty for all projects
+     * @param limit Maximum number of results
+     * @return JSON array of project names
+     */
+    private String projects(String prefix, int limit) throws IOException {
+        if(limit < 0) {
+            throw new IllegalArgumentException("Parameter limit must not be negative: " + limit);
+        }
+        List<String> all = this.projects.getAll();
+        List<String> names = prefix.isEmpty() ? all.subList(0, Math.min(limit, all.size())) : this.projects.suggest(prefix, limit);
+        StringWriter out = new StringWriter();
+        out.write('[');
+        for(int i = 0; i < names.size(); i++) {
+            out.write((i > 0) ? "," : "");
+            TaskExporter.writeJsonString(out, names.get(i));
+        }
+        out.write(']');
+        return out.toString();
+    }
+    
+    /**
+     * Runs a write on the writer thread while holding the lock of the files.
+     * @param <T> Type of the result
+     * @param write File operation
+     * @return Result of the write
+     */
+    private <T> T write(FilesLock.Locked<T> write) throws Exception {
+        return HttpApi.await(AsyncPersistence.writeResult(() -> {
+            try {
+                return FilesLock.locked(write);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+    
+    /**
+     * Waits for a background operation and rethrows its exception.
+     * @param <T> Type of the result
+     * @param future Operation
+     * @return Result of the operation
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = (e.getCause() instanceof UncheckedIOException) ? e.getCause().getCause() : e.getCause();
+            throw (cause instanceof Exception) ? (Exception) cause : e;
+        } catch (TimeoutException e) {
+            throw new IOException("Timeout of the file operation", e);
+        }
+    }
+    
+    /**
+     * Creates the JSON object of a task.
+     * @param task Task or null
+     * @return JSON object, null if there is no task
+     */
+    private static String task(Task task) throws IOException {
+        StringWriter out = new StringWriter();
+        HttpApi.writeTask(out, task);
+        return out.toString();
+    }
+    
+    /**
+     * Writes the JSON object of a task.
+     * @param out Target writer
+     * @param task Task or null
+     */
+    private static void writeTask(StringWriter out, Task task) throws IOException {
+        if(task == null) {
+            out.write("null");
+            return;
+        }
+        out.write("{\"date\":\"" + task.getDate() + "\",\"start\":\"" + task.getStartTime() + "\",\"end\":\"" + task.getEndTime() + "\",\"project\":");
+        TaskExporter.writeJsonString(out, task.getProject());
+        out.write(",\"description\":");
+        TaskExporter.writeJsonString(out, task.getDescription());
+        out.write('}');
+    }
+    
+    /**
+     * Creates the JSON object of an error.
+     * @param message Error message
+     * @return JSON object
+     */
+    private static String error(String message) {
+        StringWriter out = new StringWriter();
+        try {
+            out.write("{\"error\":");
+            TaskExporter.writeJsonString(out, String.valueOf(message));
+            out.write('}');
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Reads a required parameter.
+     * @param params Parameters of the request
+     * @param key Name of the parameter
+     * @return Value
+     */
+    private static String required(Map<String, String> params, String key) {
+        String value = params.get(key);
+        if(value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + key);
+        }
+        return value;
+    }
+    
+    /**
+     * Reads a date parameter in "yyyy-mm-dd" format.
+     * @param params Parameters of the request
+     * @param key Name of the parameter
+     * @param defaultValue Value if the parameter is missing
+     * @return Date
+     */
+    private static LocalDate date(Map<String, String> params, String key, LocalDate defaultValue) {
+        String value = params.get(key);
+        return (value == null || value.isEmpty()) ? defaultValue : LocalDate.parse(value);
+    }
+    
+    /**
+     * Reads the parameters of the query of a GET or of the JSON body of a POST.
+     * @param exchange Request
+     * @return Parameters
+     * @throws IOException if the body can't be read
+     */
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if(!"POST".equals(exchange.getRequestMethod())) {
+            HttpApi.parseParams(exchange.getRequestURI().getRawQuery(), params);
+            return params;
+        }
+        
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if(type == null || !type.toLowerCase(Locale.ROOT).matches("application/json\\s*(;.*)?")) {
+            throw new IllegalArgumentException("Content-Type must be application/json");
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            for(int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                body.write(buffer, 0, read);
+                if(body.size() > MAX_BODY) {
+                    throw new IllegalArgumentException("Body too large");
+                }
+            }
+        }
+        HttpApi.parseJson(new String(body.toByteArray(), StandardCharsets.UTF_8), params);
+        return params;
+    }
+    
+    /**
+     * Parses a flat JSON object, e.g. {"project":"A","description":"B"}.
+     * Numbers, true and false are kept as their text, null values are left out.
+     * @param json JSON object
+     * @param params Receives the members
+     */
+    private static void parseJson(String json, Map<String, String> params) {
+        int[] pos = { HttpApi.skipSpace(json, 0) };
+        HttpApi.expect(json, pos, '{');
+        if(HttpApi.peek(json, pos) == '}') {
+            pos[0]++;
+        } else {
+            for(boolean more = true; more; ) {
+                String key = HttpApi.readString(json, pos);
+                HttpApi.expect(json, pos, ':');
+                String value = (HttpApi.peek(json, pos) == '"') ? HttpApi.readString(json, pos) : HttpApi.readLiteral(json, pos);
+                if(value != null) {
+                    params.put(key, value);
+                }
+                
+                more = HttpApi.peek(json, pos) == ',';
+                HttpApi.expect(json, pos, more ? ',' : '}');
+            }
+        }
+        if(HttpApi.skipSpace(json, pos[0]) != json.length()) {
+            throw new IllegalArgumentException("Invalid JSON after the object");
+        }
+    }
+    
+    /**
+     * Reads a JSON string.
+     * @param json JSON text
+     * @param pos Position, before the string (leading whitespace is skipped) and after it afterwards
+     * @return Unescaped string
+     */
+    private static String readString(String json, int[] pos) {
+        HttpApi.expect(json, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while(true) {
+            if(pos[0] >= json.length()) {
+                throw new IllegalArgumentException("Unterminated string in JSON");
+            }
+            char c = json.charAt(pos[0]++);
+            if(c == '"') {
+                return value.toString();
+            } else if(c != '\\') {
+                value.append(c);
+            } else if(pos[0] < json.length()) {
+                char escaped = json.charAt(pos[0]++);
+                int index = "\"\\/bfnrt".indexOf(escaped);
+                if(index >= 0) {
+                    value.append("\"\\/\b\f\n\r\t".charAt(index));
+                } else if(escaped == 'u' && pos[0] + 4 <= json.length()) {
+                    try {
+                        value.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid escape in JSON");
+                    }
+                    pos[0] += 4;
+                } else {
+                    throw new IllegalArgumentException("Invalid escape in JSON");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads a JSON number, true, false or null.
+     * @param json JSON text
+     * @param pos Position, at the literal and after it afterwards
+     * @return Text of the literal, null for null
+     */
+    private static String readLiteral(String json, int[] pos) {
+        int start = pos[0];
+        while(pos[0] < json.length() && ",} \t\r\n".indexOf(json.charAt(pos[0])) < 0) {
+            pos[0]++;
+        }
+        String value = json.substring(start, pos[0]);
+        if(!value.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?|true|false|null")) {
+            throw new IllegalArgumentException("Only strings, numbers and booleans are allowed in the JSON object");
+        }
+        return value.equals("null") ? null : value;
+    }
+    
+    /**
+     * Skips whitespace and reads the expected character of a JSON text.
+     * @param json JSON text
+     * @param pos Position, after the character afterwards
+     * @param expected Expected character
+     */
+    private static void expect(String json, int[] pos, char expected) {
+        if(HttpApi.peek(json, pos) != expected) {
+            throw new IllegalArgumentException("Invalid JSON, expected '" + expected + "' at " + pos[0]);
+        }
+        pos[0]++;
+    }
+    
+    /**
+     * Skips whitespace and returns the next character of a JSON text.
+     * @param json JSON text
+     * @param pos Position, at the next character afterwards
+     * @return Next character, 0 at the end
+     */
+    private static char peek(String json, int[] pos) {
+        pos[0] = HttpApi.skipSpace(json, pos[0]);
+        return (pos[0] < json.length()) ? json.charAt(pos[0]) : 0;
+    }
+    
+    /**
+     * Skips whitespace of a JSON text.
+     * @param json JSON text
+     * @param pos Position
+     * @return Position of the next other character
+     */
+    private static int skipSpace(String json, int pos) {
+        while(pos < json.length() && " \t\r\n".indexOf(json.charAt(pos)) >= 0) {
+            pos++;
+        }
+        return pos;
+    }
+    
+    /**
+     * Parses URL encoded parameters, e.g. "project=A&amp;description=B".
+     * @param encoded Encoded parameters or null
+     * @param params Receives the parameters
+     */
+    private static void parseParams(String encoded, Map<String, String> params) throws UnsupportedEncodingException {
+        if(encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for(String param : encoded.split("&")) {
+            String[] pair = param.split("=", 2);
+            params.put(URLDecoder.decode(pair[0], "UTF-8"), (pair.length > 1) ? URLDecoder.decode(pair[1], "UTF-8") : "");
+        }
+    }
+}
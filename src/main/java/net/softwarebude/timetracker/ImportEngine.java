@@ -0,0 +1,262 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Merging import of .tt backups.
+ * The entries of the archive are streamed and every day file is parsed in parallel
+ * as soon as it is read. The imported tasks are merged into the existing days with
+ * start and end time as identity: tasks which exist already are skipped, tasks with the
+ * same times but another project or description are reported as conflicts and the
+ * existing task is kept. Every changed day is read, merged and written once while holding
+ * FilesLock, so tasks which other processes add meanwhile are kept.
+ * @author Matthias Fischer
+ */
+public class ImportEngine {
+    
+    private static final Pattern DAY = Pattern.compile("(?:.*/)?(\\d{4})-(\\d{2})-(\\d{2})(\\.txt|" + Pattern.quote(TaskJournal.EXTENSION) + ")");
+    private static final String PROJECTS = "projectlist.txt";
+    private static final int MAX_CONFLICTS = 100;
+    
+    /**
+     * Summary of an import.
+     */
+    public static class Result {
+        private final AtomicInteger days = new AtomicInteger();
+        private final AtomicInteger added = new AtomicInteger();
+        private final AtomicInteger duplicates = new AtomicInteger();
+        private final List<String> conflicts = Collections.synchronizedList(new ArrayList<>());
+        private int conflictCount;
+        
+        /**
+         * @return Number of days that were changed
+         */
+        public int getDays() {
+            return this.days.get();
+        }
+        
+        /**
+         * @return Number of added tasks
+         */
+        public int getAdded() {
+            return this.added.get();
+        }
+        
+        /**
+         * @return Number of tasks that existed already
+         */
+        public int getDuplicates() {
+            return this.duplicates.get();
+        }
+        
+        /**
+         * @return Number of tasks that collided with an existing task of other content
+         */
+        public synchronized int getConflictCount() {
+            return this.conflictCount;
+        }
+        
+        /**
+         * @return Descriptions of the first conflicts
+         */
+        public List<String> getConflicts() {
+            return this.conflicts;
+        }
+        
+        private synchronized void addConflict(String conflict) {
+            if(++this.conflictCount <= MAX_CONFLICTS) {
+                this.conflicts.add(conflict);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return this.getAdded() + " tasks imported into " + this.getDays() + " days, "
+                    + this.getDuplicates() + " duplicates, " + this.getConflictCount() + " conflicts";
+        }
+    }
+    
+    /**
+     * Imported rows of one day.
+     */
+    private static class Day {
+        private CompletableFuture<List<String>> rows = CompletableFuture.completedFuture(new ArrayList<>());
+        private final List<String> journal = new ArrayList<>();
+    }
+    
+    /**
+     * Merges a .tt backup into the existing days.
+     * @param archive Backup file
+     * @param projects Project list which receives the imported projects
+     * @return Summary of the import
+     * @throws IOException if the archive can't be read
+     */
+    public static Result importBackup(File archive, ProjectIndex projects) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        Map<String, Day> days = new TreeMap<>();
+        Set<String> names = new LinkedHashSet<>();
+        
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive.toPath()))) {
+            ZipEntry entry;
+            while((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName().replace('\\', '/');
+                if(entry.isDirectory()) {
+                    continue;
+                }
+                
+                Matcher matcher = DAY.matcher(name);
+                if(matcher.matches()) {
+                    String text = new String(ImportEngine.readEntry(zip), charset);
+                    Day day = days.computeIfAbsent(matcher.group(1) + "-" + matcher.group(2) + "-" + matcher.group(3), key -> new Day());
+                    if(matcher.group(4).equals(TaskJournal.EXTENSION)) {
+                        day.journal.addAll(ImportEngine.splitLines(text));
+                    } else {
+                        day.rows = CompletableFuture.supplyAsync(() -> ImportEngine.splitLines(text));
+                    }
+                } else if(name.equals(PROJECTS) || name.endsWith("/" + PROJECTS)) {
+                    names.addAll(ImportEngine.splitLines(new String(ImportEngine.readEntry(zip), charset)));
+                }
+            }
+        }
+        
+        Result result = new Result();
+        Set<String> imported = Collections.synchronizedSet(new LinkedHashSet<>());
+        days.entrySet().parallelStream().forEach(day -> {
+            List<String> rows = day.getValue().rows.join();
+            TaskJournal.replay(rows, day.getValue().journal);
+            // read and rewrite in one lock, so no task appended by another process in between is lost
+            FilesLock.run(() -> ImportEngine.mergeDay(day.getKey(), rows, result, imported));
+        });
+        
+        names.addAll(imported);
+        for(String name : names) {
+            if(!name.trim().isEmpty() && projects.add(name)) {
+                projects.persist(name);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Merges the imported rows of one day into its file. Must run while holding FilesLock.
+     * @param key Day in "yyyy-mm-dd" format
+     * @param rows Imported task rows
+     * @param result Receives the counts
+     * @param imported Receives the projects of the added tasks
+     */
+    private static void mergeDay(String key, List<String> rows, Result result, Set<String> imported) {
+        Calendar date = Calendar.getInstance();
+        date.clear();
+        date.set(Integer.parseInt(key.substring(0, 4)), Integer.parseInt(key.substring(5, 7)) - 1, Integer.parseInt(key.substring(8, 10)));
+        String path = EditTaskFiles.getFilePath(date);
+        
+        List<Task> existing = EditTaskFiles.existsDay(path) ? TaskCodec.local().readDay(path) : new ArrayList<>();
+        Map<String, Task> byTime = new HashMap<>();
+        existing.forEach(task -> byTime.put(ImportEngine.getIdentity(task), task));
+        
+        ObservableList<Task> merged = FXCollections.observableArrayList(existing);
+        TaskCodec codec = TaskCodec.local();
+        for(int i = 0; i < rows.size(); i++) {
+            codec.decode(rows.get(i), (p, d, s, e) -> {
+                Task task = new Task(p, d, s, e);
+                Task other = byTime.get(ImportEngine.getIdentity(task));
+                if(other == null) {
+                    byTime.put(ImportEngine.getIdentity(task), task);
+                    merged.add(task);
+                    imported.add(p);
+                } else if(other.getProject().equals(p) && other.getDescription().equals(d)) {
+                    result.duplicates.incrementAndGet();
+                } else {
+                    result.addConflict(key + " " + task.getStartTime() + "-" + task.getEndTime() + ": kept \""
+                            + other.getProject() + " - " + other.getDescription() + "\", skipped \"" + p + " - " + d + "\"");
+                }
+            });
+        }
+        
+        int added = merged.size() - existing.size();
+        if(added == 0) {
+            return;
+        }
+        FXCollections.sort(merged, Comparator.comparingLong(Task::getStartMillis));
+        EditTaskFiles.createFile(EditTaskFiles.getDirectory(date), true);
+        EditTaskFiles.saveTasks(path, merged);
+        result.added.addAndGet(added);
+        result.days.incrementAndGet();
+    }
+    
+    /**
+     * Identity of a task within a day.
+     */
+    private static String getIdentity(Task task) {
+        return task.getStartMillis() + "/" + task.getEndMillis();
+    }
+    
+    /**
+     * Reads the current entry of a zip stream.
+     */
+    private static byte[] readEntry(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * Splits a text into its non-empty lines.
+     */
+    private static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>(Arrays.asList(text.split("\r?\n")));
+        lines.removeIf(String::isEmpty);
+        return lines;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Incremental backups of the files directory.
+ * A backup directory holds a manifest with size, modification time and SHA-256 hash of
+ * every backed up file and a chain of increments (increment-000001.tt, ...). An increment
+ * is a zip file with the files that changed since the previous one and a list of the
+ * deleted files. Files whose size and modification time didn't change are not even read.
+ * Caches that are derived from the day files (segments, rollups, search index) are skipped,
+ * they are rebuilt after a restore. The lock file of FilesLock is neither backed up nor
+ * restored, a restore replacing it would unlock the files for other processes.
+ * @author Matthias Fischer
+ */
+public class IncrementalBackup {
+    
+    public static final String PREFIX = "increment-";
+    public static final String EXTENSION = ".tt";
+    
+    private static final String MANIFEST = "manifest.txt";
+    private static final String CHANGES = ".changes";
+    private static final String SEPARATOR = ";;;";
+    private static final String[] DERIVED = { MonthSegment.EXTENSION, Rollups.EXTENSION, ".idx", ".log", ".tmp", ".lock" };
+    
+    /**
+     * Entry of the manifest.
+     */
+    private static class Entry {
+        private final long size;
+        private final long modified;
+        private final String hash;
+        
+        Entry(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+    
+    /**
+     * Writes a new increment with all files that changed since the last backup.
+     * @param source Directory of the tasks, e.g. ./files
+     * @param backupDir Directory of the manifest and increments
+     * @return Number of stored and deleted files, 0 if nothing changed and no increment was written
+     * @throws IOException if a file can't be read or written
+     */
+    public static int backup(String source, File backupDir) throws IOException {
+        TaskJournal.compactPending();
+        Files.createDirectories(backupDir.toPath());
+        
+        Path root = new File(source).toPath();
+        Map<String, Entry> manifest = IncrementalBackup.readManifest(backupDir);
+        Map<String, Entry> current = new TreeMap<>();
+        Map<String, byte[]> changed = new TreeMap<>();
+        boolean modifiedFiles = false;
+        
+        for(Path file : IncrementalBackup.listFiles(root)) {
+            String name = IncrementalBackup.getName(root, file);
+            long size = Files.size(file);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            Entry old = manifest.get(name);
+            if(old != null && old.size == size && old.modified == modified) {
+                current.put(name, old);
+                continue;
+            }
+            
+            modifiedFiles = true;
+            byte[] content = Files.readAllBytes(file);
+            String hash = IncrementalBackup.hash(content);
+            current.put(name, new Entry(content.length, modified, hash));
+            if(old == null || !old.hash.equals(hash)) {
+                changed.put(name, content);
+            }
+        }
+        
+        List<String> deleted = new ArrayList<>();
+        for(String name : manifest.keySet()) {
+            if(!current.containsKey(name)) {
+                deleted.add(name);
+            }
+        }
+        
+        if(!changed.isEmpty() || !deleted.isEmpty()) {
+            int sequence = IncrementalBackup.listIncrements(backupDir).size() + 1;
+            Path increment = new File(backupDir, String.format("%s%06d%s", PREFIX, sequence, EXTENSION)).toPath();
+            Path tmp = new File(backupDir, increment.getFileName() + ".tmp").toPath();
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(tmp))) {
+                zip.putNextEntry(new ZipEntry(CHANGES));
+                StringBuilder changes = new StringBuilder().append(sequence).append('\n');
+                deleted.forEach(name -> changes.append(name).append('\n'));
+                zip.write(changes.toString().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+                
+                for(Map.Entry<String, byte[]> entry : changed.entrySet()) {
+                    zip.putNextEntry(new ZipEntry(entry.getKey()));
+                    zip.write(entry.getValue());
+                    zip.closeEntry();
+                }
+            }
+            GroupCommit.await(tmp);
+            Files.move(tmp, increment, StandardCopyOption.ATOMIC_MOVE);
+        }
+        
+        if(!changed.isEmpty() || !deleted.isEmpty() || modifiedFiles) {
+            IncrementalBackup.writeManifest(backupDir, current);
+        }
+        return changed.size() + deleted.size();
+    }
+    
+    /**
+     * Restores the files directory by replaying all increments of a backup directory in order.
+     * Files that are not part of the backup are kept. The files are locked while they are restored.
+     * @param backupDir Directory of the increments
+     * @param target Directory of the tasks, e.g. ./files
+     * @return Number of replayed increments
+     * @throws IOException if the chain is incomplete or a file can't be written
+     */
+    public static int restore(File backupDir, String target) throws IOException {
+        return FilesLock.locked(() -> IncrementalBackup.replay(backupDir, target));
+    }
+    
+    /**
+     * Replays all increments of a backup directory in order.
+     * @param backupDir Directory of the increments
+     * @param target Directory of the tasks
+     * @return Number of replayed increments
+     * @throws IOException if the chain is incomplete or a file can't be written
+     */
+    private static int replay(File backupDir, String target) throws IOException {
+        TaskJournal.compactPending();
+        
+        List<File> increments = IncrementalBackup.listIncrements(backupDir);
+        Path root = new File(target).toPath();
+        Set<String> restored = new HashSet<>();
+        Set<String> touched = new HashSet<>();
+        
+        for(int i = 0; i < increments.size(); i++) {
+            try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(increments.get(i).toPath()))) {
+                ZipEntry entry;
+                while((entry = zip.getNextEntry()) != null) {
+                    if(entry.getName().equals(CHANGES)) {
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+                        if(!String.valueOf(i + 1).equals(reader.readLine())) {
+                            throw new IOException("Backup chain is incomplete at " + increments.get(i).getName());
+                        }
+                        String name;
+                        while((name = reader.readLine()) != null) {
+                            if(!name.isEmpty() && IncrementalBackup.isBackedUp(IncrementalBackup.resolve(root, name))) {
+                                Files.deleteIfExists(IncrementalBackup.resolve(root, name));
+                                restored.remove(name);
+                                touched.add(name);
+                            }
+                        }
+                        continue;
+                    }
+                    
+                    Path file = IncrementalBackup.resolve(root, entry.getName());
+                    if(!IncrementalBackup.isBackedUp(file)) {
+                        // e.g. the lock file in increments of older versions
+                        continue;
+                    }
+                    Files.createDirectories(file.getParent());
+                    Files.copy(zip, file, StandardCopyOption.REPLACE_EXISTING);
+                    restored.add(entry.getName());
+                    touched.add(entry.getName());
+                }
+            }
+        }
+        
+        for(String name : touched) {
+            if(!name.endsWith(".txt") || name.indexOf('/') < 0) {
+                continue;
+            }
+            String dayPath = target + "/" + name;
+            if(!restored.contains(name.substring(0, name.length() - 4) + TaskJournal.EXTENSION)) {
+                Files.deleteIfExists(new File(TaskJournal.getJournalPath(dayPath)).toPath());
+            }
+            Files.deleteIfExists(new File(Rollups.getRollupPath(dayPath)).toPath());
+            HistoryReader.invalidate(dayPath);
+            DayCache.invalidate(dayPath);
+        }
+        SearchIndex.rebuild();
+        return increments.size();
+    }
+    
+    /**
+     * Lists the increments of a backup directory in order.
+     * @param backupDir Directory of the increments
+     * @return Increment files
+     */
+    public static List<File> listIncrements(File backupDir) {
+        File[] files = backupDir.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(EXTENSION));
+        if(files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+    
+    /**
+     * Lists all files to back up.
+     * @param root Directory of the tasks
+     * @return Files
+     * @throws IOException if the directory can't be read
+     */
+    private static List<Path> listFiles(Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if(!Files.isDirectory(root)) {
+            return files;
+        }
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream.filter(Files::isRegularFile).filter(IncrementalBackup::isBackedUp).forEach(files::add);
+        }
+        return files;
+    }
+    
+    /**
+     * Checks if a file holds data or is derived out of other files.
+     * @param file File to check
+     * @return Boolean
+     */
+    private static boolean isBackedUp(Path file) {
+        String name = file.getFileName().toString();
+        for(String extension : DERIVED) {
+            if(name.endsWith(extension)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Relative name of a file with "/" as separator.
+     */
+    private static String getName(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+    
+    /**
+     * Resolves a name of an increment within the target directory.
+     * @throws IOException if the name points outside of the target directory
+     */
+    private static Path resolve(Path root, String name) throws IOException {
+        Path file = root.resolve(name).normalize();
+        if(!file.startsWith(root.normalize())) {
+            throw new IOException("Invalid entry in backup: " + name);
+        }
+        return file;
+    }
+    
+    /**
+     * Creates the SHA-256 hash of a content as hex string.
+     */
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for(byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Reads the manifest, rows are "name;;;size;;;modified;;;hash;;;".
+     */
+    private static Map<String, Entry> readManifest(File backupDir) throws IOException {
+        Map<String, Entry> manifest = new HashMap<>();
+        File file = new File(backupDir, MANIFEST);
+        if(!file.exists()) {
+            return manifest;
+        }
+        for(String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            String[] values = line.split(SEPARATOR);
+            if(values.length >= 4) {
+                try {
+                    manifest.put(values[0], new Entry(Long.parseLong(values[1]), Long.parseLong(values[2]), values[3]));
+                } catch (NumberFormatException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return manifest;
+    }
+    
+    /**
+     * Replaces the manifest.
+     */
+    private static void writeManifest(File backupDir, Map<String, Entry> manifest) throws IOException {
+        Path file = new File(backupDir, MANIFEST).toPath();
+        Path tmp = new File(backupDir, MANIFEST + ".tmp").toPath();
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for(Map.Entry<String, Entry> entry : manifest.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(entry.getKey() + SEPARATOR + value.size + SEPARATOR + value.modified + SEPARATOR + value.hash + SEPARATOR);
+                writer.newLine();
+            }
+        }
+        GroupCommit.await(tmp);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        GroupCommit.sync(backupDir.toPath());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Headless replay of a navigation and editing workload against the TaskStore, which
+ * holds the load and save logic of the application window. The latency of every
+ * operation is recorded and printed as percentiles per operation.
+ * The history of the working directory is used, e.g. one created by the HistoryGenerator.
+ * Usage: LoadHarness [--ops 5000] [--years 10] [--end yyyy-mm-dd] [--seed 1]
+ * @author Matthias Fischer
+ */
+public class LoadHarness {
+    
+    private final Map<String, List<Long>> latencies = new LinkedHashMap<>();
+    private final TaskStore store;
+    private final HistoryGenerator generator;
+    private final Random random;
+    
+    /**
+     * Constructor of a harness
+     * @param seed Seed of the workload
+     */
+    public LoadHarness(long seed) {
+        ProjectIndex projects = new ProjectIndex("./files/projectlist.txt");
+        projects.load();
+        this.store = new TaskStore(projects);
+        this.generator = new HistoryGenerator(200, 500, seed);
+        this.random = new Random(seed);
+    }
+    
+    public static void main(String[] args) {
+        Map<String, String> options = HistoryGenerator.parseArgs(args);
+        int ops = Integer.parseInt(options.getOrDefault("ops", "5000"));
+        LocalDate end = LocalDate.parse(options.getOrDefault("end", LocalDate.now().toString()));
+        LocalDate start = end.minusYears(Integer.parseInt(options.getOrDefault("years", "10"))).plusDays(1);
+        
+        LoadHarness harness = new LoadHarness(Long.parseLong(options.getOrDefault("seed", "1")));
+        long time = System.currentTimeMillis();
+        harness.run(start, end, ops);
+        System.out.println(ops + " operations in " + (System.currentTimeMillis() - time) + " ms");
+        harness.print();
+        System.exit(0);
+    }
+    
+    /**
+     * Runs the workload. Most operations step to the previous or next day like the
+     * date buttons, some jump to a random day and some edit the shown day.
+     * @param from First day of the history
+     * @param to Last day of the history
+     * @param ops Number of operations
+     */
+    public void run(LocalDate from, LocalDate to, int ops) {
+        long range = ChronoUnit.DAYS.between(from, to);
+        LocalDate day = to;
+        List<Task> shown = this.show(day, "open day");
+        
+        for(int i = 0; i < ops; i++) {
+            int op = this.random.nextInt(100);
+            Calendar date = ReportEngine.toCalendar(day);
+            if(op < 60) {
+                day = this.random.nextBoolean() ? day.minusDays(1) : day.plusDays(1);
+                day = day.isBefore(from) ? from : day.isAfter(to) ? to : day;
+                shown = this.show(day, "step day");
+            } else if(op < 75) {
+                day = from.plusDays((long) (this.random.nextDouble() * range));
+                shown = this.show(day, "jump day");
+            } else if(op < 88) {
+                Task task = this.generator.createDay(date, 1).get(0);
+                this.measureWrite("add task", () -> this.store.add(date, task));
+                shown.add(task);
+            } else if(op < 96 && !shown.isEmpty()) {
+                Task task = shown.get(this.random.nextInt(shown.size()));
+                String oldFileString = task.toFileString();
+                task.setDescription(task.getDescription() + " edited");
+                this.measureWrite("edit task", () -> this.store.replace(date, oldFileString, task));
+            } else if(!shown.isEmpty()) {
+                Task task = shown.remove(this.random.nextInt(shown.size()));
+                this.measureWrite("delete task", () -> this.store.remove(date, task));
+            }
+        }
+        AsyncPersistence.flush();
+    }
+    
+    /**
+     * Shows a day like the application window: out of the cache or loaded in the background.
+     * @param day Day to show
+     * @param name Name of the operation
+     * @return Shown tasks
+     */
+    private List<Task> show(LocalDate day, String name) {
+        long start = System.nanoTime();
+        Calendar date = ReportEngine.toCalendar(day);
+        List<Task> tasks = this.store.getCached(date);
+        if(tasks == null) {
+            tasks = this.store.load(date).join();
+        }
+        this.record(name, System.nanoTime() - start);
+        return new ArrayList<>(tasks);
+    }
+    
+    /**
+     * Measures a write: the time until the window could continue and until the change is on disk.
+     * @param name Name of the operation
+     * @param write Write operation
+     */
+    private void measureWrite(String name, Supplier<CompletableFuture<Void>> write) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> future = write.get();
+        this.record(name, System.nanoTime() - start);
+        future.join();
+        this.record(name + " (persisted)", System.nanoTime() - start);
+    }
+    
+    /**
+     * Records the latency of an operation.
+     */
+    private void record(String name, long nanos) {
+        this.latencies.computeIfAbsent(name, key -> new ArrayList<>()).add(nanos);
+    }
+    
+    /**
+     * Prints count and percentiles of every operation in milliseconds.
+     */
+    public void print() {
+        System.out.println(String.format("%-24s %7s %9s %9s %9s %9s %9s", "operation", "count", "p50", "p90", "p99", "p99.9", "max"));
+        this.latencies.forEach((name, values) -> {
+            long[] sorted = values.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            System.out.println(String.format("%-24s %7d %9.3f %9.3f %9.3f %9.3f %9.3f", name, sorted.length,
+                    LoadHarness.percentile(sorted, 50), LoadHarness.percentile(sorted, 90), LoadHarness.percentile(sorted, 99),
+                    LoadHarness.percentile(sorted, 99.9), sorted[sorted.length - 1] / 1e6));
+        });
+    }
+    
+    /**
+     * Nearest-rank percentile in milliseconds.
+     */
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Latency histograms per operation and counters (bytes read and written, tasks parsed).
+ * Every timed operation is also emitted as JDK Flight Recorder event, if a recording was started.
+ * The event class is not loaded before, because loading it registers the event type, which takes
+ * a few hundred milliseconds.
+ * A snapshot can be written to ./diagnostics.txt periodically and on exit.
+ * @author Matthias Fischer
+ */
+public class Metrics {
+    
+    public static final String PATH_DUMP = "./diagnostics.txt";
+    
+    private static final int DUMP_INTERVAL_MINUTES = 10;
+    
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    
+    public static final LongAdder BYTES_READ = Metrics.counter("bytes.read");
+    public static final LongAdder BYTES_WRITTEN = Metrics.counter("bytes.written");
+    public static final LongAdder TASKS_PARSED = Metrics.counter("tasks.parsed");
+    private static final boolean JFR = Metrics.isJfrAvailable();
+    private static ScheduledExecutorService dumper;
+    
+    /**
+     * Running measurement of an operation.
+     */
+    public static final class Timer {
+        private final String operation;
+        private final long start = System.nanoTime();
+        private final OperationEvent event;
+        
+        private Timer(String operation) {
+            this.operation = operation;
+            this.event = (JFR && FlightRecorder.isInitialized()) ? OperationEvent.begin(operation) : null;
+        }
+        
+        /**
+         * Ends the measurement and records it.
+         * @return Duration in nanoseconds
+         */
+        public long stop() {
+            long nanos = System.nanoTime() - this.start;
+            Metrics.record(this.operation, nanos);
+            if(this.event != null) {
+                this.event.commit();
+            }
+            return nanos;
+        }
+    }
+    
+    /**
+     * Starts the measurement of an operation.
+     * @param operation Name of the operation, e.g. "day.load"
+     * @return Timer to stop
+     */
+    public static Timer start(String operation) {
+        return new Timer(operation);
+    }
+    
+    /**
+     * Records a duration that wasn't measured by a timer, e.g. since the start of the JVM.
+     * @param operation Name of the operation
+     * @param nanos Duration in nanoseconds
+     */
+    public static void record(String operation, long nanos) {
+        Histogram histogram = HISTOGRAMS.get(operation);
+        if(histogram == null) {
+            histogram = HISTOGRAMS.computeIfAbsent(operation, key -> new Histogram());
+        }
+        histogram.record(nanos);
+    }
+    
+    /**
+     * Measures an operation with a result.
+     * @param <T> Type of the result
+     * @param operation Name of the operation
+     * @param action Operation
+     * @return Result of the operation
+     */
+    public static <T> T time(String operation, Supplier<T> action) {
+        Timer timer = new Timer(operation);
+        try {
+            return action.get();
+        } finally {
+            timer.stop();
+        }
+    }
+    
+    /**
+     * Measures an operation.
+     * @param operation Name of the operation
+     * @param action Operation
+     */
+    public static void time(String operation, Runnable action) {
+        Timer timer = new Timer(operation);
+        try {
+            action.run();
+        } finally {
+            timer.stop();
+        }
+    }
+    
+    /**
+     * Returns a counter. Hot paths should keep the counter in a constant.
+     * @param name Name of the counter, e.g. "bytes.read"
+     * @return Counter
+     */
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+    }
+    
+    /**
+     * Writes a snapshot into ./diagnostics.txt every few minutes and on exit.
+     * Only the application window does this, so short command line runs don't replace the file.
+     */
+    public static synchronized void startDumps() {
+        if(dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleWithFixedDelay(() -> Metrics.writeDump(PATH_DUMP), DUMP_INTERVAL_MINUTES, DUMP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> Metrics.writeDump(PATH_DUMP), "metrics-shutdown"));
+    }
+    
+    /**
+     * Creates a readable snapshot of all histograms and counters.
+     * @return Snapshot as text
+     */
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append("TimeTracker ").append(TimeTracker.VERSION).append(" diagnostics ").append(LocalDateTime.now()).append('\n');
+        out.append("JFR events: ").append(JFR ? "enabled" : "not available").append("\n\n");
+        out.append(String.format("%-22s %8s %10s %10s %10s %10s%n", "operation (ms)", "count", "mean", "p50", "p99", "max"));
+        new TreeMap<>(HISTOGRAMS).forEach((operation, histogram) -> {
+            long count = histogram.count.sum();
+            out.append(String.format("%-22s %8d %10.3f %10.3f %10.3f %10.3f%n", operation, count,
+                    (count > 0) ? histogram.total.sum() / 1e6 / count : 0.0,
+                    histogram.percentile(50) / 1e6, histogram.percentile(99) / 1e6, histogram.max.get() / 1e6));
+        });
+        out.append('\n');
+        new TreeMap<>(COUNTERS).forEach((counter, value) -> out.append(String.format("%-22s %d%n", counter, value.sum())));
+        return out.toString();
+    }
+    
+    /**
+     * Writes a snapshot into a file. The file is replaced.
+     * @param path Path to the file
+     */
+    public static void writeDump(String path) {
+        try {
+            Path tmp = Paths.get(path + ".tmp");
+            Files.write(tmp, Metrics.dump().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Checks if the JVM supports Flight Recorder events.
+     * @return Boolean
+     */
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Metrics.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Histogram with four sub-buckets per power of two, so a percentile is at most 25% off.
+     */
+    private static class Histogram {
+        private static final int SUB_BUCKETS = 4;
+        
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        
+        void record(long nanos) {
+            this.buckets.incrementAndGet(Histogram.index(Math.max(nanos, 1)));
+            this.count.increment();
+            this.total.add(nanos);
+            this.max.accumulate(nanos);
+        }
+        
+        /**
+         * Upper bound of the bucket of a percentile.
+         * @param percentile Percentile, e.g. 99
+         * @return Nanoseconds
+         */
+        long percentile(double percentile) {
+            long rank = (long)Math.ceil(percentile / 100 * this.count.sum());
+            long seen = 0;
+            for(int i = 0; i < this.buckets.length(); i++) {
+                seen += this.buckets.get(i);
+                if(seen >= rank && seen > 0) {
+                    return Math.min(Histogram.upperBound(i), this.max.get());
+                }
+            }
+            return this.max.get();
+        }
+        
+        private static int index(long nanos) {
+            int power = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (power >= 2) ? (int)((nanos >>> (power - 2)) & (SUB_BUCKETS - 1)) : 0;
+            return power * SUB_BUCKETS + sub;
+        }
+        
+        private static long upperBound(int index) {
+            int power = index / SUB_BUCKETS;
+            int sub = index % SUB_BUCKETS;
+            return (power >= 2) ? (1L << power) + ((sub + 1L) << (power - 2)) - 1 : (1L << (power + 1)) - 1;
+        }
+    }
+}
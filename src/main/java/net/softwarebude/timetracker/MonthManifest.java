@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Fingerprint of the files of a month directory, e.g. "2,2016-10-04.txt:120:1476..."
+ * (number of files, then name, size and modification time of each file sorted by name).
+ * Files derived from a month (segments and rollups) store the manifest of the files they
+ * were built out of. They are up to date as long as the manifest is unchanged, so deleted
+ * files and files copied with an older modification time are noticed as well as newer ones.
+ * @author Matthias Fischer
+ */
+public class MonthManifest {
+    
+    public static final FilenameFilter DAY_FILES = (dir, name) -> name.endsWith(".txt");
+    public static final FilenameFilter TASK_FILES = (dir, name) -> name.endsWith(".txt") || name.endsWith(TaskJournal.EXTENSION);
+    
+    MonthManifest() {
+    }
+    
+    /**
+     * Creates the manifest of the files of a directory.
+     * @param directory Month directory
+     * @param filter Files which are part of the manifest
+     * @return Manifest as a String
+     */
+    public static String of(File directory, FilenameFilter filter) {
+        File[] files = directory.listFiles(filter);
+        if(files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        
+        StringBuilder manifest = new StringBuilder(8 + files.length * 48).append(files.length);
+        for(File file : files) {
+            manifest.append(',').append(file.getName()).append(':').append(file.length()).append(':').append(file.lastModified());
+        }
+        return manifest.toString();
+    }
+    
+    /**
+     * Replaces the entry of one file in a manifest, e.g. after a known change of the file.
+     * @param manifest Manifest
+     * @param file Changed file, its entry is removed if it doesn't exist anymore
+     * @return Changed manifest
+     */
+    public static String withFile(String manifest, File file) {
+        Map<String, String> entries = new TreeMap<>();
+        String[] parts = manifest.split(",");
+        for(int i = 1; i < parts.length; i++) {
+            entries.put(parts[i].substring(0, parts[i].indexOf(':')), parts[i]);
+        }
+        
+        entries.remove(file.getName());
+        if(file.exists()) {
+            entries.put(file.getName(), file.getName() + ":" + file.length() + ":" + file.lastModified());
+        }
+        
+        StringBuilder changed = new StringBuilder(manifest.length() + 48).append(entries.size());
+        for(String entry : entries.values()) {
+            changed.append(',').append(entry);
+        }
+        return changed.toString();
+    }
+    
+    /**
+     * Checks if a stored manifest still matches the files of a directory.
+     * @param manifest Stored manifest (or null if the derived file has none)
+     * @param directory Month directory
+     * @param filter Files which are part of the manifest
+     * @return Boolean
+     */
+    public static boolean isUpToDate(String manifest, File directory, FilenameFilter filter) {
+        return manifest != null && manifest.equals(MonthManifest.of(directory, filter));
+    }
+}
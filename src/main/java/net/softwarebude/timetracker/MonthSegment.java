@@ -0,0 +1,407 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary storage of all tasks of one month in a single segment file next to the day files,
+ * e.g. ./files/2016/10/2016-10.seg
+ * Layout:
+ * header       - magic "TTMS", format version (short), year (short), month (byte),
+ *                manifest of the day files and journals the segment was built out of (varint length + UTF-8)
+ * projects     - count and names (varint length + UTF-8)
+ * day table    - 31 entries of record offset (int, -1 = no day file) and task count (int)
+ * records      - start and end millis (long), project id (varint), description (varint length + UTF-8)
+ * @author Matthias Fischer
+ */
+public class MonthSegment {
+    
+    public static final String EXTENSION = ".seg";
+    public static final short VERSION = 2;
+    
+    private static final int MAGIC = 0x54544D53;
+    private static final int DAYS = 31;
+    
+    private final ByteBuffer buffer;
+    private final int year;
+    private final int month;
+    private final String manifest;
+    private final String[] projects;
+    private final int[] offsets;
+    private final int[] counts;
+    private final int recordStart;
+    
+    /**
+     * Constructor of a segment out of its content
+     * @param buffer Content of a segment file
+     * @throws IOException if the content is no segment of a known version
+     */
+    MonthSegment(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        ByteBuffer buf = buffer.duplicate();
+        
+        if(buf.getInt() != MAGIC) {
+            throw new IOException("No task segment");
+        }
+        short version = buf.getShort();
+        if(version != VERSION) {
+            throw new IOException("Unsupported task segment version " + version);
+        }
+        this.year = buf.getShort();
+        this.month = buf.get();
+        this.manifest = MonthSegment.readString(buf);
+        
+        this.projects = new String[MonthSegment.readVarint(buf)];
+        for(int i = 0; i < this.projects.length; i++) {
+            this.projects[i] = MonthSegment.readString(buf);
+        }
+        
+        this.offsets = new int[DAYS];
+        this.counts = new int[DAYS];
+        for(int i = 0; i < DAYS; i++) {
+            this.offsets[i] = buf.getInt();
+            this.counts[i] = buf.getInt();
+        }
+        this.recordStart = buf.position();
+    }
+    
+    /**
+     * Reads a segment file.
+     * @param path Path to the segment file
+     * @return Segment
+     * @throws IOException if the file can't be read or is no segment
+     */
+    public static MonthSegment read(String path) throws IOException {
+        return new MonthSegment(ByteBuffer.wrap(Files.readAllBytes(Paths.get(path))));
+    }
+    
+    /**
+     * Maps a segment file read-only into memory. Tasks are decoded straight
+     * from the mapping, the file content is never copied onto the heap.
+     * @param path Path to the segment file
+     * @return Segment
+     * @throws IOException if the file can't be mapped or is no segment
+     */
+    public static MonthSegment map(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return new MonthSegment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    
+    /**
+     * Reads only the manifest out of the header of a segment file.
+     * @param path Path to the segment file
+     * @return Manifest or null if the file is missing or no segment of the current version
+     */
+    public static String readManifest(String path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if(in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return null;
+            }
+            in.skipBytes(3);
+            
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.readByte();
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while((b & 0x80) != 0);
+            
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Converts a date into the path of its month segment.
+     * @param date Date of the month
+     * @return Path to the segment file as a String
+     */
+    public static String getSegmentPath(Calendar date) {
+        String year = Integer.toString(date.get(Calendar.YEAR));
+        String month = Task.correctLength(Integer.toString(date.get(Calendar.MONTH)+1));
+        return EditTaskFiles.getDirectory(date) + year + "-" + month + MonthSegment.EXTENSION;
+    }
+    
+    /**
+     * Getter of the year
+     * @return Year of the segment
+     */
+    public int getYear() {
+        return this.year;
+    }
+    
+    /**
+     * Getter of the month
+     * @return Month of the segment, 1 to 12
+     */
+    public int getMonth() {
+        return this.month;
+    }
+    
+    /**
+     * Getter of the manifest
+     * @return Manifest of the day files and journals the segment was built out of, see MonthManifest
+     */
+    public String getManifest() {
+        return this.manifest;
+    }
+    
+    /**
+     * Checks if the day had a day file.
+     * @param day Day of month, 1 to 31
+     * @return Boolean
+     */
+    public boolean hasDay(int day) {
+        return this.offsets[day - 1] >= 0;
+    }
+    
+    /**
+     * Getter of the number of tasks of a day
+     * @param day Day of month, 1 to 31
+     * @return Number of tasks
+     */
+    public int getTaskCount(int day) {
+        return this.counts[day - 1];
+    }
+    
+    /**
+     * Decodes the tasks of a day.
+     * @param day Day of month, 1 to 31
+     * @return Tasks of the day in file order
+     */
+    public List<Task> readDay(int day) {
+        List<Task> tasks = new ArrayList<>(this.counts[day - 1]);
+        this.forEachTask(day, (p, d, s, e) -> tasks.add(new Task(p, d, s, e)));
+        return tasks;
+    }
+    
+    /**
+     * Decodes the tasks of a day without creating Task objects.
+     * @param day Day of month, 1 to 31
+     * @param consumer Receives the tasks in file order
+     * @return Number of tasks
+     */
+    public int forEachTask(int day, TaskCodec.TaskConsumer consumer) {
+        int count = this.counts[day - 1];
+        if(count == 0) {
+            return 0;
+        }
+        
+        ByteBuffer buf = this.buffer.duplicate();
+        buf.position(this.recordStart + this.offsets[day - 1]);
+        for(int i = 0; i < count; i++) {
+            long start = buf.getLong();
+            long end = buf.getLong();
+            String project = this.projects[MonthSegment.readVarint(buf)];
+            consumer.accept(project, MonthSegment.readString(buf), start, end);
+        }
+        Metrics.TASKS_PARSED.add(count);
+        return count;
+    }
+    
+    /**
+     * Writes a segment file. The file is replaced atomically.
+     * @param path Path to the segment file
+     * @param year Year of the month
+     * @param month Month, 1 to 12
+     * @param manifest Manifest of the day files and journals, see MonthManifest
+     * @param days Tasks per day of month (index 0 = first day), null if the day has no day file
+     * @throws IOException if the file can't be written
+     */
+    public static void write(String path, int year, int month, String manifest, List<List<Task>> days) throws IOException {
+        Map<String, Integer> projectIds = new HashMap<>();
+        List<String> projects = new ArrayList<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream rec = new DataOutputStream(records);
+        int[] offsets = new int[DAYS];
+        int[] counts = new int[DAYS];
+        
+        for(int d = 0; d < DAYS; d++) {
+            List<Task> tasks = (d < days.size()) ? days.get(d) : null;
+            if(tasks == null) {
+                offsets[d] = -1;
+                continue;
+            }
+            
+            offsets[d] = rec.size();
+            counts[d] = tasks.size();
+            for(Task task : tasks) {
+                Integer id = projectIds.get(task.getProject());
+                if(id == null) {
+                    id = projects.size();
+                    projectIds.put(task.getProject(), id);
+                    projects.add(task.getProject());
+                }
+                
+                rec.writeLong(task.getStartMillis());
+                rec.writeLong(task.getEndMillis());
+                MonthSegment.writeVarint(rec, id);
+                MonthSegment.writeString(rec, task.getDescription());
+            }
+        }
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() + 512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(year);
+        out.writeByte(month);
+        MonthSegment.writeString(out, manifest);
+        MonthSegment.writeVarint(out, projects.size());
+        for(String project : projects) {
+            MonthSegment.writeString(out, project);
+        }
+        for(int d = 0; d < DAYS; d++) {
+            out.writeInt(offsets[d]);
+            out.writeInt(counts[d]);
+        }
+        records.writeTo(out);
+        out.flush();
+        
+        Path target = Paths.get(path);
+        Path tmp = Paths.get(path + ".tmp");
+        Files.write(tmp, bytes.toByteArray());
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Converts the day files (including their journals) of a month into its segment file.
+     * @param date Date of the month
+     * @return Path of the written segment
+     * @throws IOException if the segment can't be written
+     */
+    public static String fromTextFiles(Calendar date) throws IOException {
+        String manifest = MonthManifest.of(new File(EditTaskFiles.getDirectory(date)), MonthManifest.TASK_FILES);
+        Calendar day = (Calendar)date.clone();
+        int length = day.getActualMaximum(Calendar.DAY_OF_MONTH);
+        List<List<Task>> days = new ArrayList<>(length);
+        
+        for(int d = 1; d <= length; d++) {
+            day.set(Calendar.DAY_OF_MONTH, d);
+            String path = EditTaskFiles.getFilePath(day);
+            if(!EditTaskFiles.existsDay(path)) {
+                days.add(null);
+                continue;
+            }
+            
+            days.add(TaskCodec.local().readDay(path));
+        }
+        
+        String path = MonthSegment.getSegmentPath(date);
+        MonthSegment.write(path, date.get(Calendar.YEAR), date.get(Calendar.MONTH)+1, manifest, days);
+        return path;
+    }
+    
+    /**
+     * Reads an unsigned variable length integer.
+     * @param buf Buffer to read from
+     * @return int value
+     */
+    static int readVarint(ByteBuffer buf) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+    
+    /**
+     * Writes an unsigned variable length integer.
+     * @param out Stream to write to
+     * @param value int value
+     * @throws IOException if the stream can't be written
+     */
+    static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    /**
+     * Reads a string with varint length prefix.
+     * @param buf Buffer to read from
+     * @return String
+     */
+    static String readString(ByteBuffer buf) {
+        int length = MonthSegment.readVarint(buf);
+        String str;
+        if(buf.hasArray()) {
+            str = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            str = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return str;
+    }
+    
+    /**
+     * Writes a string with varint length prefix.
+     * @param out Stream to write to
+     * @param str String
+     * @throws IOException if the stream can't be written
+     */
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        MonthSegment.writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+}
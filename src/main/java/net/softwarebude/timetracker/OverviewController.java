@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.net.URL;
+import java.time.LocalDate;
+import java.time.temporal.WeekFields;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.DatePicker;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+
+/**
+ * FXML Controller class for the Overview dialog, which shows the tasks of a week or a month
+ *
+ * @author Matthias Fischer
+ */
+public class OverviewController implements Initializable {
+    
+    /**
+     * Length of the shown range.
+     */
+    public enum View {
+        WEEK, MONTH;
+        
+        /**
+         * Calculates the first day of the range which contains a date.
+         * @param date Date within the range
+         * @return First day
+         */
+        public LocalDate first(LocalDate date) {
+            if(this == WEEK) {
+                return date.with(WeekFields.of(Locale.getDefault()).dayOfWeek(), 1);
+            }
+            return date.withDayOfMonth(1);
+        }
+        
+        /**
+         * Calculates the last day of the range which contains a date.
+         * @param date Date within the range
+         * @return Last day
+         */
+        public LocalDate last(LocalDate date) {
+            return (this == WEEK) ? this.first(date).plusDays(6) : this.first(date).plusMonths(1).minusDays(1);
+        }
+        
+        /**
+         * Moves a date by whole ranges.
+         * @param date Date to move
+         * @param ranges Number of ranges, negative to move backwards
+         * @return Moved date
+         */
+        public LocalDate move(LocalDate date, int ranges) {
+            return (this == WEEK) ? date.plusWeeks(ranges) : date.plusMonths(ranges);
+        }
+    }
+    
+    private final TaskRepository repository = new DayFileRepository();
+    private long generation;
+    
+    @FXML private ChoiceBox<View> cbView;
+    @FXML private DatePicker dpDate;
+    @FXML private Label lblResult;
+    
+    @FXML private TableColumn<Task, String> tcDate;
+    @FXML private TableColumn<Task, String> tcStartTime;
+    @FXML private TableColumn<Task, String> tcEndTime;
+    @FXML private TableColumn<Task, String> tcProject;
+    @FXML private TableColumn<Task, String> tcDescription;
+    @FXML private TableView<Task> tvTasks;
+    
+    /**
+     * Initializes the controller class.
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle rb) {
+        this.tcDate.setCellValueFactory(new PropertyValueFactory<>("date"));
+        this.tcStartTime.setCellValueFactory(new PropertyValueFactory<>("start"));
+        this.tcEndTime.setCellValueFactory(new PropertyValueFactory<>("end"));
+        this.tcProject.setCellValueFactory(new PropertyValueFactory<>("project"));
+        this.tcDescription.setCellValueFactory(new PropertyValueFactory<>("description"));
+        
+        this.cbView.setItems(FXCollections.observableArrayList(View.values()));
+        this.cbView.setValue(View.WEEK);
+        this.dpDate.setValue(LocalDate.now());
+        this.cbView.valueProperty().addListener((observable, oldValue, newValue) -> this.refresh());
+        this.dpDate.valueProperty().addListener((observable, oldValue, newValue) -> this.refresh());
+        this.refresh();
+    }
+    
+    /**
+     * Handler for the button previous. It shows the range before the current one.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleButtonPrevious(ActionEvent event) {
+        this.move(-1);
+    }
+    
+    /**
+     * Handler for the button next. It shows the range after the current one.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleButtonNext(ActionEvent event) {
+        this.move(1);
+    }
+    
+    /**
+     * Moves the selected date by whole ranges.
+     * @param ranges Number of ranges
+     */
+    private void move(int ranges) {
+        if(this.dpDate.getValue() != null) {
+            this.dpDate.setValue(this.cbView.getValue().move(this.dpDate.getValue(), ranges));
+        }
+    }
+    
+    /**
+     * Counts the tasks of the selected range in the background and shows them.
+     * The rows of a day are read when they are scrolled into view.
+     */
+    private void refresh() {
+        LocalDate date = this.dpDate.getValue();
+        if(date == null) {
+            return;
+        }
+        
+        long generation = ++this.generation;
+        View view = this.cbView.getValue();
+        LocalDate from = view.first(date);
+        LocalDate to = view.last(date);
+        this.lblResult.setText("Reading...");
+        
+        PagedTaskList.open(this.repository, from, to).thenAcceptAsync(tasks -> {
+            if(generation == this.generation) {
+                this.tvTasks.setItems(tasks);
+                this.lblResult.setText(from + " - " + to + ": " + tasks.size() + " tasks on " + tasks.getDayCount() + " days");
+            }
+        }, AsyncPersistence.FX).exceptionally(AsyncPersistence::log);
+    }
+}
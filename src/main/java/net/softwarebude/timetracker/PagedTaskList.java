@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read only list of the tasks of a range of days for a TableView.
+ * Only the number of tasks per day is read up front, past months take it out of the day
+ * table of their segment. A day is read in the background when one of its rows is shown
+ * first, until then its rows are null. At most MAX_LOADED_DAYS days are kept, others are
+ * read again when they are shown.
+ * The list must only be used on the FX application thread.
+ * @author Matthias Fischer
+ */
+public class PagedTaskList extends ObservableListBase<Task> {
+    
+    private static final int MAX_LOADED_DAYS = 62;
+    
+    private final TaskRepository repository;
+    private final LocalDate[] days;
+    private final int[] offsets;
+    private final Set<LocalDate> loading = new HashSet<>();
+    private final Map<LocalDate, List<Task>> loaded = new LinkedHashMap<LocalDate, List<Task>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LocalDate, List<Task>> eldest) {
+            return this.size() > MAX_LOADED_DAYS;
+        }
+    };
+    
+    /**
+     * Constructor
+     * @param repository Repository to read from
+     * @param days Days with tasks
+     * @param offsets First row of every day and the number of rows at the end
+     */
+    private PagedTaskList(TaskRepository repository, LocalDate[] days, int[] offsets) {
+        this.repository = repository;
+        this.days = days;
+        this.offsets = offsets;
+    }
+    
+    /**
+     * Counts the tasks of a range in the background and creates the list.
+     * @param repository Repository to read from
+     * @param from First day of the range
+     * @param to Last day of the range (inclusive)
+     * @return List of the range
+     */
+    public static CompletableFuture<PagedTaskList> open(TaskRepository repository, LocalDate from, LocalDate to) {
+        return AsyncPersistence.read(() -> {
+            List<LocalDate> candidates = repository.days(from, to);
+            List<LocalDate> days = new ArrayList<>();
+            int[] offsets = new int[candidates.size() + 1];
+            for(LocalDate day : candidates) {
+                int count = repository.countOfDay(day);
+                if(count > 0) {
+                    days.add(day);
+                    offsets[days.size()] = offsets[days.size() - 1] + count;
+                }
+            }
+            return new PagedTaskList(repository, days.toArray(new LocalDate[days.size()]), Arrays.copyOf(offsets, days.size() + 1));
+        });
+    }
+    
+    @Override
+    public Task get(int index) {
+        if(index < 0 || index >= this.size()) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        
+        int page = Arrays.binarySearch(this.offsets, index);
+        if(page < 0) {
+            page = -page - 2;
+        }
+        
+        List<Task> tasks = this.loaded.get(this.days[page]);
+        if(tasks == null) {
+            this.load(page);
+            return null;
+        }
+        
+        int row = index - this.offsets[page];
+        return (row < tasks.size()) ? tasks.get(row) : null;
+    }
+    
+    @Override
+    public int size() {
+        return this.offsets[this.offsets.length - 1];
+    }
+    
+    /**
+     * Getter of the number of days with tasks
+     * @return Number of days
+     */
+    public int getDayCount() {
+        return this.days.length;
+    }
+    
+    /**
+     * Reads a day in the background and replaces its null rows.
+     * @param page Index of the day
+     */
+    private void load(int page) {
+        LocalDate day = this.days[page];
+        if(!this.loading.add(day)) {
+            return;
+        }
+        
+        AsyncPersistence.read(() -> this.repository.findByDay(day)).thenAcceptAsync(tasks -> {
+            this.loading.remove(day);
+            this.loaded.put(day, tasks);
+            int from = this.offsets[page];
+            int to = this.offsets[page + 1];
+            this.beginChange();
+            this.nextReplace(from, to, Collections.nCopies(to - from, null));
+            this.endChange();
+        }, AsyncPersistence.FX).exceptionally(e -> {
+            AsyncPersistence.FX.execute(() -> this.loading.remove(day));
+            return AsyncPersistence.log(e);
+        });
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the known project names of the project list file.
+ * Names are kept in a case-insensitively sorted array, so prefix lookups are a binary
+ * search, and in a set of lower case keys for duplicate checks. The array is replaced
+ * on changes, so lookups from other threads (e.g. the autocompletion) need no lock.
+ * New projects are appended to the project list file instead of rewriting it.
+ * @author Matthias Fischer
+ */
+public class ProjectIndex {
+    
+    private final String path;
+    private final Set<String> keys;
+    private volatile String[] sorted;
+    
+    /**
+     * Constructor of an empty index
+     * @param path Path to the project list file
+     */
+    ProjectIndex(String path) {
+        this.path = path;
+        this.keys = ConcurrentHashMap.newKeySet();
+        this.sorted = new String[0];
+    }
+    
+    /**
+     * Adds the projects of the project list file to the index.
+     */
+    public void load() {
+        Metrics.time("projects.load", () -> this.addAll(EditTaskFiles.readFile(this.path)));
+    }
+    
+    /**
+     * Adds many projects at once.
+     * @param names Project names, duplicates are ignored
+     */
+    public synchronized void addAll(List<String> names) {
+        List<String> all = new ArrayList<>(Arrays.asList(this.sorted));
+        for(String name : names) {
+            if(!name.isEmpty() && this.keys.add(ProjectIndex.key(name))) {
+                all.add(name);
+            }
+        }
+        
+        String[] array = all.toArray(new String[all.size()]);
+        Arrays.sort(array, String.CASE_INSENSITIVE_ORDER);
+        this.sorted = array;
+    }
+    
+    /**
+     * Checks if a project is known, ignoring case.
+     * @param name Project name
+     * @return Boolean
+     */
+    public boolean contains(String name) {
+        return this.keys.contains(ProjectIndex.key(name));
+    }
+    
+    /**
+     * Adds a project, if it is not already known.
+     * @param name Project name
+     * @return Boolean if the project was added
+     */
+    public synchronized boolean add(String name) {
+        if(name.isEmpty() || !this.keys.add(ProjectIndex.key(name))) {
+            return false;
+        }
+        
+        String[] old = this.sorted;
+        int index = Arrays.binarySearch(old, name, String.CASE_INSENSITIVE_ORDER);
+        int insert = (index < 0) ? -index - 1 : index;
+        String[] array = new String[old.length + 1];
+        System.arraycopy(old, 0, array, 0, insert);
+        array[insert] = name;
+        System.arraycopy(old, insert, array, insert + 1, old.length - insert);
+        this.sorted = array;
+        return true;
+    }
+    
+    /**
+     * Finds projects starting with a prefix, ignoring case.
+     * @param prefix Typed text
+     * @param limit Maximum number of results
+     * @return Matching project names in sorted order
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String[] array = this.sorted;
+        if(prefix == null || prefix.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        int index = Arrays.binarySearch(array, prefix, String.CASE_INSENSITIVE_ORDER);
+        int from = (index < 0) ? -index - 1 : index;
+        List<String> result = new ArrayList<>();
+        for(int i = from; i < array.length && result.size() < limit; i++) {
+            if(!array[i].regionMatches(true, 0, prefix, 0, prefix.length())) {
+                break;
+            }
+            result.add(array[i]);
+        }
+        return result;
+    }
+    
+    /**
+     * Getter of all projects
+     * @return Project names in sorted order
+     */
+    public List<String> getAll() {
+        return Collections.unmodifiableList(Arrays.asList(this.sorted));
+    }
+    
+    /**
+     * Appends one project to the project list file while the files are locked.
+     * @param name Project name
+     */
+    public void persist(String name) {
+        FilesLock.run(() -> TaskFilesWatcher.write(this.path, () -> {
+            try {
+                String line = name;
+                try (RandomAccessFile file = new RandomAccessFile(this.path, "r")) {
+                    if(file.length() > 0) {
+                        file.seek(file.length() - 1);
+                        if(file.read() != '\n') {
+                            line = System.lineSeparator() + name;
+                        }
+                    }
+                }
+                Files.write(Paths.get(this.path), Collections.singletonList(line), Charset.defaultCharset(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+                GroupCommit.sync(Paths.get(this.path));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+    }
+    
+    /**
+     * Converts a project name into its case-insensitive key.
+     * @param name Project name
+     * @return Key
+     */
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.net.URL;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.ResourceBundle;
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.DatePicker;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+
+/**
+ * FXML Controller class for the Report dialog
+ *
+ * @author Matthias Fischer
+ */
+public class ReportController implements Initializable {
+    
+    @FXML private DatePicker dpFrom;
+    @FXML private DatePicker dpTo;
+    @FXML private ChoiceBox<ReportEngine.Period> cbPeriod;
+    @FXML private Button btnCreate;
+    @FXML private Label lblTotal;
+    
+    @FXML private TableColumn<ReportEntry, String> tcPeriod;
+    @FXML private TableColumn<ReportEntry, String> tcProject;
+    @FXML private TableColumn<ReportEntry, String> tcDuration;
+    @FXML private TableView<ReportEntry> tvReport;
+    
+    /**
+     * Initializes the controller class.
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle rb) {
+        this.dpFrom.setValue(LocalDate.now().withDayOfMonth(1));
+        this.dpTo.setValue(LocalDate.now());
+        this.cbPeriod.setItems(FXCollections.observableArrayList(ReportEngine.Period.values()));
+        this.cbPeriod.setValue(ReportEngine.Period.TOTAL);
+        
+        this.tcPeriod.setCellValueFactory(new PropertyValueFactory<>("period"));
+        this.tcProject.setCellValueFactory(new PropertyValueFactory<>("project"));
+        this.tcDuration.setCellValueFactory(new PropertyValueFactory<>("duration"));
+    }
+    
+    /**
+     * Handler for the button create. It creates the report in the background.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleButtonCreate(ActionEvent event) {
+        LocalDate from = this.dpFrom.getValue();
+        LocalDate to = this.dpTo.getValue();
+        ReportEngine.Period period = this.cbPeriod.getValue();
+        if(from == null || to == null || to.isBefore(from)) {
+            return;
+        }
+        
+        this.btnCreate.setDisable(true);
+        AsyncPersistence.read(() -> ReportEngine.run(from, to, period)).thenAcceptAsync(entries -> {
+            this.tvReport.getItems().setAll(entries);
+            this.lblTotal.setText("Total: " + ReportEntry.formatDuration(ReportController.sum(entries)));
+            this.btnCreate.setDisable(false);
+        }, AsyncPersistence.FX).exceptionally(e -> {
+            AsyncPersistence.FX.execute(() -> this.btnCreate.setDisable(false));
+            return AsyncPersistence.log(e);
+        });
+    }
+    
+    /**
+     * Sums the time of report lines.
+     * @param entries Report lines
+     * @return Time in milliseconds
+     */
+    private static long sum(List<ReportEntry> entries) {
+        long millis = 0;
+        for(ReportEntry entry : entries) {
+            millis += entry.getMillis();
+        }
+        return millis;
+    }
+}
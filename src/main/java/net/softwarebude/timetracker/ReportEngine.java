@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Totals per project over arbitrary date ranges.
+ * The range is split into months, which are read in parallel out of their rollups
+ * (rollups which are missing or outdated are rebuilt out of the tasks first). Every
+ * month sums its days per period and project, and the results of all months are
+ * merged afterwards.
+ * @author Matthias Fischer
+ */
+public class ReportEngine {
+    
+    /**
+     * Length of the periods of a report.
+     */
+    public enum Period {
+        DAY, WEEK, MONTH, TOTAL
+    }
+    
+    /**
+     * Creates a report.
+     * @param from First day of the range
+     * @param to Last day of the range (inclusive)
+     * @param period Length of the periods
+     * @return Report lines, sorted by period and project
+     */
+    public static List<ReportEntry> run(LocalDate from, LocalDate to, Period period) {
+        List<LocalDate> months = new ArrayList<>();
+        for(LocalDate month = from.withDayOfMonth(1); !month.isAfter(to); month = month.plusMonths(1)) {
+            months.add(month);
+        }
+        
+        Map<String, Map<String, long[]>> totals = months.parallelStream()
+                .map(month -> ReportEngine.sumMonth(month, from, to, period))
+                .reduce(new HashMap<>(), ReportEngine::merge, ReportEngine::merge);
+        
+        List<ReportEntry> entries = new ArrayList<>();
+        new TreeMap<>(totals).forEach((key, projects) -> {
+            new TreeMap<>(projects).forEach((project, millis) -> {
+                entries.add(new ReportEntry(key, project, millis[0]));
+            });
+        });
+        return entries;
+    }
+    
+    /**
+     * Converts a date into the key of its period.
+     * @param date Date
+     * @param period Length of the periods
+     * @return Key, e.g. "2016-10-05", "2016-W40", "2016-10" or "Total"
+     */
+    public static String getPeriodKey(LocalDate date, Period period) {
+        switch(period) {
+            case DAY:
+                return date.toString();
+            case WEEK:
+                return date.get(IsoFields.WEEK_BASED_YEAR) + "-W" 
+                        + Task.correctLength(Integer.toString(date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR)));
+            case MONTH:
+                return date.getYear() + "-" + Task.correctLength(Integer.toString(date.getMonthValue()));
+            default:
+                return "Total";
+        }
+    }
+    
+    /**
+     * Converts a date into a Calendar at the start of the day.
+     * @param date Date
+     * @return Calendar
+     */
+    public static Calendar toCalendar(LocalDate date) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(date.getYear(), date.getMonthValue() - 1, date.getDayOfMonth());
+        return cal;
+    }
+    
+    /**
+     * Sums the days of one month that lie within the range out of the rollup of the month.
+     * @param month First day of the month
+     * @param from First day of the range
+     * @param to Last day of the range
+     * @param period Length of the periods
+     * @return Milliseconds per period and project
+     */
+    private static Map<String, Map<String, long[]>> sumMonth(LocalDate month, LocalDate from, LocalDate to, Period period) {
+        Map<String, Map<String, long[]>> totals = new HashMap<>();
+        Map<String, Map<String, Long>> rollup = Rollups.read(ReportEngine.toCalendar(month));
+        LocalDate first = month.isBefore(from) ? from : month;
+        LocalDate last = month.plusMonths(1).minusDays(1);
+        boolean wholeMonth = first.equals(month) && !last.isAfter(to);
+        if(last.isAfter(to)) {
+            last = to;
+        }
+        
+        if(wholeMonth && (period == Period.MONTH || period == Period.TOTAL)) {
+            ReportEngine.add(totals, ReportEngine.getPeriodKey(month, period), rollup.get(Rollups.MONTH));
+            return totals;
+        }
+        
+        for(LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+            String dayKey = Task.correctLength(Integer.toString(day.getDayOfMonth()));
+            ReportEngine.add(totals, ReportEngine.getPeriodKey(day, period), rollup.get(dayKey));
+        }
+        return totals;
+    }
+    
+    /**
+     * Adds time per project to a period.
+     * @param totals Milliseconds per period and project
+     * @param key Key of the period
+     * @param projects Milliseconds per project (or null)
+     */
+    private static void add(Map<String, Map<String, long[]>> totals, String key, Map<String, Long> projects) {
+        if(projects == null || projects.isEmpty()) {
+            return;
+        }
+        
+        Map<String, long[]> target = totals.computeIfAbsent(key, k -> new HashMap<>());
+        projects.forEach((project, millis) -> target.computeIfAbsent(project, k -> new long[1])[0] += millis);
+    }
+    
+    /**
+     * Merges the totals of a month into the totals of the report.
+     * @param target Totals of the report
+     * @param source Totals of a month
+     * @return Merged totals
+     */
+    private static Map<String, Map<String, long[]>> merge(Map<String, Map<String, long[]>> target, Map<String, Map<String, long[]>> source) {
+        Map<String, Map<String, long[]>> result = new HashMap<>(target);
+        source.forEach((key, projects) -> {
+            Map<String, long[]> merged = new HashMap<>();
+            result.getOrDefault(key, new HashMap<>()).forEach((p, m) -> merged.put(p, m.clone()));
+            projects.forEach((p, m) -> merged.computeIfAbsent(p, k -> new long[1])[0] += m[0]);
+            result.put(key, merged);
+        });
+        return result;
+    }
+}
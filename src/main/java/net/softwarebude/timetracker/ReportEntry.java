@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.util.Locale;
+
+/**
+ * One line of a report: the time spent on a project within a period.
+ * @author Matthias Fischer
+ */
+public class ReportEntry {
+    
+    private final String period;
+    private final String project;
+    private final long millis;
+    
+    /**
+     * Constructor of a report line
+     * @param period Period, e.g. "2016-10-05", "2016-W40" or "2016-10"
+     * @param project Project name
+     * @param millis Time spent in milliseconds
+     */
+    ReportEntry(String period, String project, long millis) {
+        this.period = period;
+        this.project = project;
+        this.millis = millis;
+    }
+    
+    /**
+     * Getter of the period
+     * @return Period as String
+     */
+    public String getPeriod() {
+        return this.period;
+    }
+    
+    /**
+     * Getter of the project name
+     * @return Projectname as String
+     */
+    public String getProject() {
+        return this.project;
+    }
+    
+    /**
+     * Getter of the time spent
+     * @return Time in milliseconds
+     */
+    public long getMillis() {
+        return this.millis;
+    }
+    
+    /**
+     * Getter of the time spent in "h:mm" format
+     * @return Time as String
+     */
+    public String getDuration() {
+        return ReportEntry.formatDuration(this.millis);
+    }
+    
+    /**
+     * Getter of the time spent in decimal hours
+     * @return Hours as String, e.g. "7.50"
+     */
+    public String getHours() {
+        return String.format(Locale.ROOT, "%.2f", this.millis / 3600000.0);
+    }
+    
+    /**
+     * Converts a duration into "h:mm" format
+     * @param millis Duration in milliseconds
+     * @return Duration as String
+     */
+    public static String formatDuration(long millis) {
+        long minutes = millis / 60000;
+        return (minutes / 60) + ":" + Task.correctLength(Long.toString(minutes % 60));
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Pre-aggregated totals per project next to the day files of a month,
+ * e.g. ./files/2016/10/2016-10.rollup
+ * Every row holds the time of one project on one day ("05;;;project;;;millis;;;")
+ * or in the whole month ("month;;;project;;;millis;;;"). The first row holds the manifest
+ * of the day files ("manifest;;;...;;;", see MonthManifest). The rollup only covers the day
+ * files, the journals of recent changes are added when it is read, so single task changes
+ * never rewrite it. A compaction applies its journal to the rollup once. A rollup that is
+ * missing or whose manifest doesn't match the day files of its month anymore is rebuilt.
+ * @author Matthias Fischer
+ */
+public class Rollups {
+    
+    public static final String EXTENSION = ".rollup";
+    public static final String MONTH = "month";
+    
+    private static final String MANIFEST = "manifest";
+    private static final String SEPARATOR = ";;;";
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    
+    /**
+     * Converts the path of a day file into the path of the rollup of its month.
+     * @param dayPath Path to the day file
+     * @return Path to the rollup as a String
+     */
+    public static String getRollupPath(String dayPath) {
+        int slash = dayPath.lastIndexOf('/');
+        return dayPath.substring(0, slash + 1) + dayPath.substring(slash + 1, slash + 8) + Rollups.EXTENSION;
+    }
+    
+    /**
+     * Folds the journal of a day file into the day file (see TaskJournal.compact).
+     * The changes of the journal are applied to an up to date rollup once,
+     * so it stays up to date without a rebuild.
+     * @param dayPath Path to the day file
+     * @param write Compaction of the journal
+     */
+    public static void compact(String dayPath, Runnable write) {
+        String path = Rollups.getRollupPath(dayPath);
+        synchronized(Rollups.lock(path)) {
+            Map<String, Map<String, Long>> rollup = Rollups.readIfUpToDate(path, null);
+            if(rollup == null) {
+                write.run();
+                return;
+            }
+            
+            String manifest = Rollups.getManifest(path);
+            Map<String, Long> delta;
+            synchronized(TaskJournal.LOCK) {
+                delta = Rollups.journalDelta(dayPath);
+                write.run();
+            }
+            
+            if(!new File(TaskJournal.getJournalPath(dayPath)).exists()) {
+                Rollups.merge(rollup, Rollups.getDay(dayPath), delta);
+                Rollups.save(path, rollup, MonthManifest.withFile(manifest, new File(dayPath)));
+            }
+        }
+    }
+    
+    /**
+     * Recomputes one day of a rollup after its day file was changed by another program.
+     * The rollup is only changed if all other day files of the month still match it,
+     * otherwise it is rebuilt on the next read anyway.
+     * @param dayPath Path to the changed day file
+     */
+    public static void refreshDay(String dayPath) {
+        String path = Rollups.getRollupPath(dayPath);
+        File file = new File(dayPath);
+        synchronized(Rollups.lock(path)) {
+            String manifest = Rollups.getManifest(path);
+            Map<String, Map<String, Long>> rollup = Rollups.readIfUpToDate(path, file);
+            if(rollup == null) {
+                return;
+            }
+            
+            String day = Rollups.getDay(dayPath);
+            Map<String, Long> delta = new HashMap<>();
+            rollup.getOrDefault(day, Collections.emptyMap()).forEach((project, millis) -> delta.put(project, -millis));
+            if(file.exists()) {
+                TaskCodec.local().decodeFile(dayPath, (p, d, s, e) -> Rollups.collect(delta, p, s, e, 1));
+            }
+            Rollups.merge(rollup, day, delta);
+            Rollups.save(path, rollup, manifest);
+        }
+    }
+    
+    /**
+     * Reads the rollup of a month including the changes of its journals.
+     * It is rebuilt if it is missing or outdated.
+     * @param date Date of the month
+     * @return Milliseconds per project, keyed by day ("01" to "31") and "month"
+     */
+    public static Map<String, Map<String, Long>> read(Calendar date) {
+        String path = Rollups.getRollupPath(EditTaskFiles.getFilePath(date));
+        synchronized(Rollups.lock(path)) {
+            Map<String, Map<String, Long>> rollup = Rollups.readIfUpToDate(path, null);
+            if(rollup == null) {
+                rollup = Rollups.rebuildMonth(date);
+            }
+            
+            String directory = path.substring(0, path.lastIndexOf('/') + 1);
+            File[] journals = new File(directory).listFiles((dir, name) -> name.endsWith(TaskJournal.EXTENSION));
+            if(journals != null) {
+                for(File journal : journals) {
+                    String name = journal.getName();
+                    String dayPath = directory + name.substring(0, name.length() - TaskJournal.EXTENSION.length()) + ".txt";
+                    Rollups.merge(rollup, Rollups.getDay(dayPath), Rollups.journalDelta(dayPath));
+                }
+            }
+            return rollup;
+        }
+    }
+    
+    /**
+     * Rebuilds the rollup of a month out of its day files, without the changes of the journals.
+     * @param date Date of the month
+     * @return Milliseconds per project, keyed by day ("01" to "31") and "month"
+     */
+    public static Map<String, Map<String, Long>> rebuildMonth(Calendar date) {
+        Calendar day = (Calendar)date.clone();
+        String path = Rollups.getRollupPath(EditTaskFiles.getFilePath(day));
+        Map<String, Map<String, Long>> rollup = new TreeMap<>();
+        
+        synchronized(Rollups.lock(path)) {
+            String manifest = Rollups.getManifest(path);
+            int length = day.getActualMaximum(Calendar.DAY_OF_MONTH);
+            for(int d = 1; d <= length; d++) {
+                day.set(Calendar.DAY_OF_MONTH, d);
+                String dayPath = EditTaskFiles.getFilePath(day);
+                if(!new File(dayPath).exists()) {
+                    continue;
+                }
+                
+                Map<String, Long> delta = new HashMap<>();
+                TaskCodec.local().decodeFile(dayPath, (p, desc, s, e) -> Rollups.collect(delta, p, s, e, 1));
+                Rollups.merge(rollup, Task.correctLength(Integer.toString(d)), delta);
+            }
+            
+            if(new File(path).getParentFile().isDirectory()) {
+                Rollups.save(path, rollup, manifest);
+            }
+        }
+        return rollup;
+    }
+    
+    /**
+     * Rebuilds the rollups of all months of the files directory.
+     */
+    public static void rebuild() {
+        File[] years = new File("./files").listFiles(File::isDirectory);
+        if(years == null) {
+            return;
+        }
+        
+        for(File year : years) {
+            File[] months = year.listFiles(File::isDirectory);
+            if(months == null) {
+                continue;
+            }
+            
+            for(File month : months) {
+                try {
+                    Calendar date = Calendar.getInstance();
+                    date.clear();
+                    date.set(Integer.parseInt(year.getName()), Integer.parseInt(month.getName()) - 1, 1);
+                    Rollups.rebuildMonth(date);
+                } catch (NumberFormatException e) {
+                    System.err.println("No month directory: " + month.getPath());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Converts the path of a day file into its day key.
+     * @param dayPath Path to the day file
+     * @return Day of month, "01" to "31"
+     */
+    private static String getDay(String dayPath) {
+        String name = dayPath.substring(dayPath.lastIndexOf('/') + 1);
+        return name.substring(8, 10);
+    }
+    
+    /**
+     * Computes the changes of the journal of a day file, which are not yet contained in the day file.
+     * @param dayPath Path to the day file
+     * @return Milliseconds per project to add (negative to subtract)
+     */
+    private static Map<String, Long> journalDelta(String dayPath) {
+        List<String> before;
+        List<String> after;
+        synchronized(TaskJournal.LOCK) {
+            before = new File(dayPath).exists() ? EditTaskFiles.readFile(dayPath) : Collections.emptyList();
+            after = TaskJournal.read(dayPath);
+        }
+        
+        Map<String, Long> delta = new HashMap<>();
+        TaskCodec codec = TaskCodec.local();
+        for(String row : before) {
+            codec.decode(row, (p, d, s, e) -> Rollups.collect(delta, p, s, e, -1));
+        }
+        for(String row : after) {
+            codec.decode(row, (p, d, s, e) -> Rollups.collect(delta, p, s, e, 1));
+        }
+        return delta;
+    }
+    
+    /**
+     * Adds time per project to a day and to the month.
+     * @param rollup Rollup to change
+     * @param day Day key
+     * @param delta Milliseconds per project
+     */
+    private static void merge(Map<String, Map<String, Long>> rollup, String day, Map<String, Long> delta) {
+        for(String key : new String[] { day, MONTH }) {
+            Map<String, Long> projects = rollup.computeIfAbsent(key, k -> new TreeMap<>());
+            delta.forEach((project, millis) -> {
+                long sum = projects.getOrDefault(project, 0L) + millis;
+                if(sum == 0) {
+                    projects.remove(project);
+                } else {
+                    projects.put(project, sum);
+                }
+            });
+            if(projects.isEmpty()) {
+                rollup.remove(key);
+            }
+        }
+    }
+    
+    /**
+     * Adds the duration of a task to a difference.
+     * @param delta Milliseconds per project
+     * @param project Project name
+     * @param start Start time in milliseconds since epoch
+     * @param end End time in milliseconds since epoch
+     * @param sign 1 to add, -1 to subtract
+     */
+    private static void collect(Map<String, Long> delta, String project, long start, long end, int sign) {
+        long millis = (start != Task.UNSET && end != Task.UNSET) ? Math.max(0, end - start) : 0;
+        delta.merge(project, sign * millis, Long::sum);
+    }
+    
+    /**
+     * Parses the rows of a rollup file.
+     * @param lines Rows
+     * @return Milliseconds per project, keyed by day and "month"
+     */
+    private static Map<String, Map<String, Long>> parse(List<String> lines) {
+        Map<String, Map<String, Long>> rollup = new TreeMap<>();
+        for(String line : lines) {
+            int key = line.indexOf(SEPARATOR);
+            int project = (key >= 0) ? line.indexOf(SEPARATOR, key + SEPARATOR.length()) : -1;
+            int millis = (project >= 0) ? line.indexOf(SEPARATOR, project + SEPARATOR.length()) : -1;
+            long value = (millis >= 0) ? TaskCodec.parseLong(line, project + SEPARATOR.length(), millis) : Long.MIN_VALUE;
+            
+            if(value != Long.MIN_VALUE) {
+                rollup.computeIfAbsent(line.substring(0, key), k -> new TreeMap<>())
+                        .put(line.substring(key + SEPARATOR.length(), project), value);
+            } else {
+                System.err.println("Invalid rollup row: " + line);
+            }
+        }
+        return rollup;
+    }
+    
+    /**
+     * Writes a rollup file.
+     * @param path Path to the rollup file
+     * @param rollup Milliseconds per project, keyed by day and "month"
+     * @param manifest Manifest of the files the rollup matches
+     */
+    private static void save(String path, Map<String, Map<String, Long>> rollup, String manifest) {
+        ObservableList<String> lines = FXCollections.observableArrayList();
+        lines.add(MANIFEST + SEPARATOR + manifest + SEPARATOR);
+        rollup.forEach((key, projects) -> projects.forEach((project, millis) -> {
+            lines.add(key + SEPARATOR + project + SEPARATOR + millis + SEPARATOR);
+        }));
+        EditTaskFiles.saveFile(path, lines);
+    }
+    
+    /**
+     * Reads a rollup file if its manifest matches the day files of its month.
+     * @param path Path to the rollup file
+     * @param changed Day file whose entry isn't compared (or null)
+     * @return Milliseconds per project, keyed by day and "month", or null if the rollup has to be rebuilt
+     */
+    private static Map<String, Map<String, Long>> readIfUpToDate(String path, File changed) {
+        if(!new File(path).exists()) {
+            return null;
+        }
+        
+        List<String> lines = EditTaskFiles.readFile(path);
+        String prefix = MANIFEST + SEPARATOR;
+        if(lines.isEmpty() || !lines.get(0).startsWith(prefix) || !lines.get(0).endsWith(SEPARATOR)) {
+            return null;
+        }
+        
+        String manifest = lines.get(0).substring(prefix.length(), lines.get(0).length() - SEPARATOR.length());
+        if(changed != null) {
+            manifest = MonthManifest.withFile(manifest, changed);
+        }
+        if(!MonthManifest.isUpToDate(manifest, new File(path).getAbsoluteFile().getParentFile(), MonthManifest.DAY_FILES)) {
+            return null;
+        }
+        return Rollups.parse(lines.subList(1, lines.size()));
+    }
+    
+    /**
+     * Creates the manifest of the day files next to a rollup file.
+     * @param path Path to the rollup file
+     * @return Manifest as a String
+     */
+    private static String getManifest(String path) {
+        return MonthManifest.of(new File(path).getAbsoluteFile().getParentFile(), MonthManifest.DAY_FILES);
+    }
+    
+    /**
+     * Returns the lock object of a rollup file.
+     * @param path Path to the rollup file
+     * @return Lock object
+     */
+    private static Object lock(String path) {
+        return LOCKS.computeIfAbsent(path, p -> new Object());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The task which is recorded by the command line or the HTTP API, e.g. ./files/running.task
+ * Changes of the running task are serialized with FilesLock, which is shared by all
+ * processes working on the same files. The file is replaced atomically, so it can be
+ * read without the lock.
+ * @author Matthias Fischer
+ */
+public class RunningTask {
+    
+    public static final String PATH = "./files/running.task";
+    
+    RunningTask() {
+        
+    }
+    
+    /**
+     * Reads the running task.
+     * @return Task or null, if no task is running
+     * @throws IOException if the file can't be read
+     */
+    public static Task read() throws IOException {
+        File file = new File(PATH);
+        if(!file.exists()) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(file.toPath(), Charset.defaultCharset());
+        return lines.isEmpty() ? null : new Task(lines.get(0));
+    }
+    
+    /**
+     * Stores a task as the running task. The file is replaced atomically.
+     * @param task Started task
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Task task) throws IOException {
+        Path tmp = Paths.get(PATH + ".tmp");
+        Files.write(tmp, Collections.singletonList(task.toFileString()), Charset.defaultCharset());
+        GroupCommit.await(tmp);
+        Files.move(tmp, Paths.get(PATH), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Stops the running task, appends it to the file of its start day and removes it.
+     * The day file is written before the running task is removed.
+     * @return Stopped task or null, if no task was running
+     * @throws IOException if a file can't be written
+     */
+    public static Task stop() throws IOException {
+        return FilesLock.locked(() -> {
+            Task task = RunningTask.read();
+            if(task == null) {
+                return null;
+            }
+            
+            task.stop();
+            Calendar day = ReportEngine.toCalendar(LocalDate.parse(task.getDate()));
+            EditTaskFiles.createFile(EditTaskFiles.getDirectory(day), true);
+            EditTaskFiles.addTask(EditTaskFiles.getFilePath(day), task);
+            RunningTask.clear();
+            return task;
+        });
+    }
+    
+    /**
+     * Converts a stopped task into the path of the file of its start day.
+     * @param task Task
+     * @return Path to the day file
+     */
+    public static String getDayPath(Task task) {
+        return EditTaskFiles.getFilePath(ReportEngine.toCalendar(LocalDate.parse(task.getDate())));
+    }
+    
+    /**
+     * Removes the running task.
+     * @throws IOException if the file can't be deleted
+     */
+    public static void clear() throws IOException {
+        Files.deleteIfExists(Paths.get(PATH));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.cell.PropertyValueFactory;
+
+/**
+ * FXML Controller class for the Search dialog
+ *
+ * @author Matthias Fischer
+ */
+public class SearchController implements Initializable {
+    
+    private static final int MAX_RESULTS = 500;
+    
+    private long searchGeneration;
+    
+    @FXML private TextField tfQuery;
+    @FXML private Label lblResult;
+    
+    @FXML private TableColumn<Task, String> tcDate;
+    @FXML private TableColumn<Task, String> tcStartTime;
+    @FXML private TableColumn<Task, String> tcEndTime;
+    @FXML private TableColumn<Task, String> tcProject;
+    @FXML private TableColumn<Task, String> tcDescription;
+    @FXML private TableView<Task> tvResults;
+    
+    /**
+     * Initializes the controller class.
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle rb) {
+        this.tcDate.setCellValueFactory(new PropertyValueFactory<>("date"));
+        this.tcStartTime.setCellValueFactory(new PropertyValueFactory<>("start"));
+        this.tcEndTime.setCellValueFactory(new PropertyValueFactory<>("end"));
+        this.tcProject.setCellValueFactory(new PropertyValueFactory<>("project"));
+        this.tcDescription.setCellValueFactory(new PropertyValueFactory<>("description"));
+    }
+    
+    /**
+     * Handler for enter-pressed in the search box. It searches in the background.
+     * @param event ActionEvent
+     */
+    @FXML
+    public void handleSearch(ActionEvent event) {
+        long generation = ++this.searchGeneration;
+        String query = this.tfQuery.getText();
+        this.lblResult.setText("Searching...");
+        
+        AsyncPersistence.read(() -> SearchIndex.search(query, MAX_RESULTS)).thenAcceptAsync(tasks -> {
+            if(generation == this.searchGeneration) {
+                this.tvResults.getItems().setAll(tasks);
+                this.lblResult.setText(tasks.size() + ((tasks.size() >= MAX_RESULTS) ? "+" : "") + " tasks found");
+            }
+        }, AsyncPersistence.FX).exceptionally(AsyncPersistence::log);
+    }
+}
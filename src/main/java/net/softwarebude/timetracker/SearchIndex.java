@@ -0,0 +1,395 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Full-text index over project names and descriptions of all tasks.
+ * The postings (term to days) are stored in ./files/search.idx. The terms of added or
+ * changed tasks are appended to ./files/search.log ("+day;;;terms"), so a write neither
+ * loads the index nor reads its day. Removed tasks are not logged, a search verifies
+ * every task of a found day anyway. The log is replayed on load and folded into the
+ * postings file when it grows, whether the index is loaded or not.
+ * Both files are shared by all processes, so they are only read and written while holding
+ * FilesLock. Loaded postings are reloaded when another process changed the files, and a
+ * compaction reloads the log before it clears it.
+ * @author Matthias Fischer
+ */
+public class SearchIndex {
+    
+    private static final String PATH_INDEX = "./files/search.idx";
+    private static final String PATH_LOG = "./files/search.log";
+    private static final String SEPARATOR = ";;;";
+    private static final int MAX_LOG_RECORDS = 1000;
+    
+    private static final char ADD = '+';
+    
+    private static Map<String, TreeSet<String>> postings;
+    private static Map<String, Set<String>> days;
+    private static String loadedState;
+    private static int logRecords = -1;
+    private static long logLength = -1;
+    
+    /**
+     * Adds the terms of added or changed tasks of a day.
+     * @param dayPath Path to the day file
+     * @param tasks Added or changed tasks
+     */
+    public static void update(String dayPath, List<Task> tasks) {
+        FilesLock.run(() -> SearchIndex.append(dayPath, tasks));
+    }
+    
+    /**
+     * Appends the terms of tasks to the log. Runs while holding FilesLock.
+     * @param dayPath Path to the day file
+     * @param tasks Added or changed tasks
+     */
+    private static synchronized void append(String dayPath, List<Task> tasks) {
+        if(!new File(PATH_INDEX).exists()) {
+            // not built yet, the first search builds it out of all day files
+            return;
+        }
+        
+        Set<String> terms = new TreeSet<>();
+        for(Task task : tasks) {
+            SearchIndex.tokenize(task.getProject(), terms);
+            SearchIndex.tokenize(task.getDescription(), terms);
+        }
+        if(terms.isEmpty()) {
+            return;
+        }
+        
+        String day = SearchIndex.getDayKey(dayPath);
+        boolean current = postings != null && SearchIndex.getState().equals(loadedState);
+        if(new File(PATH_LOG).length() != logLength) {
+            // written by another process
+            logRecords = -1;
+        }
+        try {
+            Files.write(Paths.get(PATH_LOG), Collections.singletonList(ADD + day + SEPARATOR + String.join(" ", terms)),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        
+        if(current) {
+            SearchIndex.addTerms(day, terms);
+            loadedState = SearchIndex.getState();
+        }
+        if(logRecords < 0) {
+            logRecords = SearchIndex.readLines(PATH_LOG).size() - 1;
+        }
+        logLength = new File(PATH_LOG).length();
+        if(++logRecords > MAX_LOG_RECORDS) {
+            SearchIndex.compact();
+        }
+    }
+    
+    /**
+     * Finds the tasks containing all words of a query in project or description.
+     * The index is loaded (or built, if it does not exist) on first use.
+     * @param query Words to search for
+     * @param limit Maximum number of tasks
+     * @return Matching tasks, newest day first
+     */
+    public static List<Task> search(String query, int limit) {
+        Set<String> words = new TreeSet<>();
+        SearchIndex.tokenize(query, words);
+        List<Task> result = new ArrayList<>();
+        if(words.isEmpty()) {
+            return result;
+        }
+        
+        List<String> found;
+        try {
+            found = FilesLock.locked(() -> SearchIndex.findDays(words));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return result;
+        }
+        for(String day : found) {
+            Calendar date = Calendar.getInstance();
+            date.clear();
+            date.set(Integer.parseInt(day.substring(0, 4)), Integer.parseInt(day.substring(5, 7)) - 1, Integer.parseInt(day.substring(8, 10)));
+            
+            for(Task task : HistoryReader.readDay(date)) {
+                Set<String> terms = new TreeSet<>();
+                SearchIndex.tokenize(task.getProject(), terms);
+                SearchIndex.tokenize(task.getDescription(), terms);
+                if(terms.containsAll(words)) {
+                    result.add(task);
+                    if(result.size() >= limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Rebuilds the index out of all day files.
+     */
+    public static void rebuild() {
+        FilesLock.run(SearchIndex::build);
+    }
+    
+    /**
+     * Builds the index out of all day files and writes it. Runs while holding FilesLock.
+     */
+    private static synchronized void build() {
+        postings = new HashMap<>();
+        days = new HashMap<>();
+        
+        File[] years = new File("./files").listFiles(File::isDirectory);
+        for(File year : (years != null) ? years : new File[0]) {
+            File[] months = year.listFiles(File::isDirectory);
+            for(File month : (months != null) ? months : new File[0]) {
+                File[] files = month.listFiles((dir, name) -> name.matches("\\d{4}-\\d{2}-\\d{2}(\\.txt|" + Pattern.quote(TaskJournal.EXTENSION) + ")"));
+                Set<String> paths = new TreeSet<>();
+                for(File file : (files != null) ? files : new File[0]) {
+                    paths.add(new File(month, file.getName().substring(0, 10) + ".txt").getPath());
+                }
+                for(String path : paths) {
+                    Set<String> terms = new TreeSet<>();
+                    TaskCodec.local().forEachTask(path, (p, d, s, e) -> {
+                        SearchIndex.tokenize(p, terms);
+                        SearchIndex.tokenize(d, terms);
+                    });
+                    SearchIndex.setTerms(SearchIndex.getDayKey(path), terms);
+                }
+            }
+        }
+        SearchIndex.write();
+    }
+    
+    /**
+     * Splits a text into lower case words of letters and digits.
+     * @param text Text
+     * @param terms Receives the words
+     */
+    static void tokenize(String text, Set<String> terms) {
+        int start = -1;
+        for(int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if(letter && start < 0) {
+                start = i;
+            } else if(!letter && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+    
+    /**
+     * Finds the days containing all words. Runs while holding FilesLock.
+     * @param words Lower case words
+     * @return Day keys, newest first
+     */
+    private static synchronized List<String> findDays(Set<String> words) {
+        SearchIndex.load();
+        
+        TreeSet<String> found = null;
+        for(String word : words) {
+            TreeSet<String> list = postings.get(word);
+            if(list == null) {
+                return Collections.emptyList();
+            }
+            if(found == null) {
+                found = new TreeSet<>(list);
+            } else {
+                found.retainAll(list);
+            }
+        }
+        return new ArrayList<>(found.descendingSet());
+    }
+    
+    /**
+     * Loads the postings file and replays the log, unless the loaded postings match both files.
+     * Builds the index if none exists. Runs while holding FilesLock.
+     */
+    private static void load() {
+        String state = SearchIndex.getState();
+        if(postings != null && state.equals(loadedState)) {
+            return;
+        }
+        if(!new File(PATH_INDEX).exists()) {
+            SearchIndex.build();
+            return;
+        }
+        
+        postings = new HashMap<>();
+        days = new HashMap<>();
+        for(String line : SearchIndex.readLines(PATH_INDEX)) {
+            int split = line.indexOf(SEPARATOR);
+            if(split > 0) {
+                String term = line.substring(0, split);
+                for(String day : line.substring(split + SEPARATOR.length()).split(",")) {
+                    postings.computeIfAbsent(term, t -> new TreeSet<>()).add(day);
+                    days.computeIfAbsent(day, d -> new TreeSet<>()).add(term);
+                }
+            }
+        }
+        
+        List<String> log = SearchIndex.readLines(PATH_LOG);
+        for(String line : log) {
+            int split = line.indexOf(SEPARATOR);
+            if(split > 0) {
+                Set<String> terms = new TreeSet<>();
+                Collections.addAll(terms, line.substring(split + SEPARATOR.length()).split(" "));
+                terms.remove("");
+                if(line.charAt(0) == ADD) {
+                    SearchIndex.addTerms(line.substring(1, split), terms);
+                } else {
+                    // complete term set of a day, written by older versions
+                    SearchIndex.setTerms(line.substring(0, split), terms);
+                }
+            }
+        }
+        logRecords = log.size();
+        logLength = new File(PATH_LOG).length();
+        loadedState = state;
+    }
+    
+    /**
+     * Replaces the terms of a day in the loaded index.
+     * @param day Day key
+     * @param terms New terms of the day
+     */
+    private static void setTerms(String day, Set<String> terms) {
+        Set<String> old = days.remove(day);
+        if(old != null) {
+            for(String term : old) {
+                TreeSet<String> list = postings.get(term);
+                list.remove(day);
+                if(list.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        
+        if(!terms.isEmpty()) {
+            days.put(day, terms);
+            for(String term : terms) {
+                postings.computeIfAbsent(term, t -> new TreeSet<>()).add(day);
+            }
+        }
+    }
+    
+    /**
+     * Adds terms to a day in the loaded index.
+     * @param day Day key
+     * @param terms Additional terms of the day
+     */
+    private static void addTerms(String day, Set<String> terms) {
+        Set<String> known = days.computeIfAbsent(day, d -> new TreeSet<>());
+        for(String term : terms) {
+            if(known.add(term)) {
+                postings.computeIfAbsent(term, t -> new TreeSet<>()).add(day);
+            }
+        }
+    }
+    
+    /**
+     * Folds the log into the postings file. The log is read again first, so records which
+     * other processes appended since the postings were loaded are kept. Runs while holding FilesLock.
+     */
+    private static void compact() {
+        SearchIndex.load();
+        SearchIndex.write();
+    }
+    
+    /**
+     * Writes the loaded postings into the postings file and clears the log. Runs while holding FilesLock.
+     */
+    private static void write() {
+        ObservableList<String> lines = FXCollections.observableArrayList();
+        postings.forEach((term, list) -> lines.add(term + SEPARATOR + String.join(",", list)));
+        
+        try {
+            Files.write(Paths.get(PATH_INDEX + ".tmp"), lines, StandardCharsets.UTF_8);
+            Files.move(Paths.get(PATH_INDEX + ".tmp"), Paths.get(PATH_INDEX), StandardCopyOption.REPLACE_EXISTING);
+            Files.write(Paths.get(PATH_LOG), new byte[0]);
+            logRecords = 0;
+            logLength = 0;
+            loadedState = SearchIndex.getState();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Describes the state of the postings file and the log by their sizes and modification times.
+     * @return State as a String
+     */
+    private static String getState() {
+        File index = new File(PATH_INDEX);
+        File log = new File(PATH_LOG);
+        return index.length() + ":" + index.lastModified() + ":" + log.length() + ":" + log.lastModified();
+    }
+    
+    /**
+     * Reads an index file.
+     * @param path Path to the file
+     * @return Rows, empty if the file does not exist
+     */
+    private static List<String> readLines(String path) {
+        try {
+            return new File(path).exists() ? Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8) : Collections.emptyList();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+    
+    /**
+     * Converts the path of a day file into its day key.
+     * @param dayPath Path to the day file
+     * @return Day key, e.g. "2016-10-05"
+     */
+    private static String getDayKey(String dayPath) {
+        String name = dayPath.substring(Math.max(dayPath.lastIndexOf('/'), dayPath.lastIndexOf(File.separatorChar)) + 1);
+        return name.substring(0, 10);
+    }
+}
@@ -48,7 +48,7 @@ public class Setting {
      * @return Setting instance
      */
     public static Setting instanceOf(String line) {
-        String[] str = line.split("=");
+        String[] str = line.split("=", 2);
         return new Setting(str[0], str[1]);
     }
     
@@ -23,78 +23,263 @@
  */
 package net.softwarebude.timetracker;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
 /**
- * Manage settings.
+ * Immutable snapshot of the settings. The application shares one current snapshot, so a
+ * lookup doesn't touch the settings.ini file. Changes replace the snapshot and are saved
+ * with a short delay, so a few changes in a row are written once. The file is only read
+ * again if it was changed by someone else.
  * @author Matthias Fischer
  */
-public class Settings {
+public final class Settings {
     
-    private final String path = "./settings.ini";
-    private final Map<String, Setting> list;
+    static final String PATH = "./settings.ini";
+    private static final long DELAY_MILLIS = 500;
     
-    Settings() {
-        EditTaskFiles.createFile(this.path);
-        this.list = new HashMap<>();
+    private static final List<Consumer<Settings>> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "settings");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private static volatile Settings current = new Settings(Collections.emptyMap());
+    private static CompletableFuture<Settings> shared;
+    private static ScheduledFuture<?> pendingSave;
+    private static ScheduledFuture<?> pendingReload;
+    
+    private final Map<String, String> values;
+    
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(Settings::flush, "settings-shutdown"));
+    }
+    
+    private Settings(Map<String, String> values) {
+        this.values = values;
     }
     
     /**
-     * Load settings out of the settings.ini file
+     * Returns the settings of the application. The settings.ini file is read only once in the
+     * background, all windows share the loaded snapshot.
+     * @return Future of the settings
      */
-    public void loadSettings() {
-        this.parseSettingFile(EditTaskFiles.readFile(this.path));
+    public static synchronized CompletableFuture<Settings> shared() {
+        if(shared == null) {
+            shared = AsyncPersistence.read(Settings::loadSettings).thenApply(settings -> {
+                current = settings;
+                Settings.watch();
+                return settings;
+            });
+        }
+        return shared;
     }
     
     /**
-     * Save settings into the settings.ini file
+     * Returns the current snapshot. It is empty until the settings are loaded.
+     * @return Settings
      */
-    public void saveSettings() {
-        ObservableList<String> rows = FXCollections.observableArrayList();
-
-        list.entrySet().stream().forEach((entry) -> {
-            rows.add(entry.getValue().createFileString());
-        });
-        
-        EditTaskFiles.saveFile(this.path, rows);
+    public static Settings current() {
+        return current;
     }
     
     /**
-     * Setter for boolean setting - overides if this setting already exists
+     * Adds a listener which gets every new snapshot. It is called on the thread which changed
+     * the settings, or on a background thread if the file was changed.
+     * @param listener Listener
+     */
+    public static void addListener(Consumer<Settings> listener) {
+        LISTENERS.add(listener);
+    }
+    
+    /**
+     * Changes a setting. The new snapshot is published as soon as the settings are loaded
+     * and saved a little later.
      * @param key Key of the setting
-     * @param value Value of this setting
+     * @param value Value of the setting
      */
-    public void setSettingBoolean(String key, Boolean value) {
-        Setting tmpSetting = new Setting(key, String.valueOf(value));
-        this.list.put(key, tmpSetting);
+    public static void update(String key, String value) {
+        Settings.shared().thenRun(() -> Settings.apply(key, value)).exceptionally(AsyncPersistence::log);
+    }
+    
+    /**
+     * Replaces the current snapshot by one with the changed setting.
+     * @param key Key of the setting
+     * @param value Value of the setting
+     */
+    private static void apply(String key, String value) {
+        Settings updated;
+        synchronized(Settings.class) {
+            if(value.equals(current.values.get(key))) {
+                return;
+            }
+            Map<String, String> values = new HashMap<>(current.values);
+            values.put(key, value);
+            updated = current = new Settings(Collections.unmodifiableMap(values));
+            
+            if(pendingSave != null) {
+                pendingSave.cancel(false);
+            }
+            pendingSave = SCHEDULER.schedule(Settings::saveLater, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        Settings.notifyListeners(updated);
+    }
+    
+    /**
+     * Writes pending changes at once, e.g. before the application ends.
+     */
+    public static void flush() {
+        synchronized(Settings.class) {
+            if(pendingSave == null || !pendingSave.cancel(false)) {
+                return;
+            }
+        }
+        Settings.saveLater();
+        AsyncPersistence.flush();
     }
     
     /**
      * Getter for boolean setting
      * @param key Key of the setting
-     * @return Boolean value of the setting - null if not available
+     * @return Boolean value of the setting - false if not available
+     */
+    public boolean getSettingBoolean(String key) {
+        return "true".equals(this.values.get(key));
+    }
+    
+    /**
+     * Getter for integer setting
+     * @param key Key of the setting
+     * @param defaultValue Value if the setting is not available or no number
+     * @return int value of the setting
      */
-    public Boolean getSettingBoolean(String key) {
-        Setting tmp = this.list.get(key);
-        if(tmp != null) {
-            return tmp.getValue().equals("true");
+    public int getSettingInteger(String key, int defaultValue) {
+        String value = this.values.get(key);
+        if(value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
         }
-        return false;
+        return defaultValue;
+    }
+    
+    /**
+     * Getter for string setting
+     * @param key Key of the setting
+     * @return String value of the setting - null if not available
+     */
+    public String getSettingString(String key) {
+        return this.values.get(key);
+    }
+    
+    /**
+     * Queues the write of the current snapshot.
+     */
+    private static void saveLater() {
+        AsyncPersistence.writeCoalesced(PATH, () -> {
+            Settings settings;
+            synchronized(Settings.class) {
+                pendingSave = null;
+                settings = current;
+            }
+            ObservableList<String> rows = FXCollections.observableArrayList();
+            new TreeMap<>(settings.values).forEach((key, value) -> rows.add(Setting.createFileString(key, value)));
+            Metrics.time("settings.save", () -> EditTaskFiles.saveFile(PATH, rows));
+        });
+    }
+    
+    /**
+     * Load settings out of the settings.ini file
+     * @return Settings of the file
+     */
+    private static Settings loadSettings() {
+        EditTaskFiles.createFile(PATH);
+        return Metrics.time("settings.load", () -> Settings.parseSettingFile(EditTaskFiles.readFile(PATH)));
     }
     
     /**
      * Parses settings.ini file
      * @param list Rows of settings.ini file
+     * @return Settings of the rows
+     */
+    private static Settings parseSettingFile(List<String> list) {
+        Map<String, String> values = new HashMap<>();
+        for(String line : list) {
+            if(line.contains("=")) {
+                Setting setting = Setting.instanceOf(line);
+                values.put(setting.getKey(), setting.getValue());
+            }
+        }
+        return new Settings(Collections.unmodifiableMap(values));
+    }
+    
+    /**
+     * Reloads the settings as soon as settings.ini is changed by someone else.
+     * Events are collected for a moment, so a file which is still being written isn't read.
+     */
+    private static void watch() {
+        Path file = Paths.get(PATH).toAbsolutePath().normalize();
+        try {
+            FileWatcher.watch(file.getParent(), changed -> {
+                if(changed.equals(file) || changed.equals(file.getParent())) {
+                    synchronized(Settings.class) {
+                        if(pendingReload != null) {
+                            pendingReload.cancel(false);
+                        }
+                        pendingReload = SCHEDULER.schedule(Settings::reload, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Replaces the snapshot with the content of settings.ini, unless it is the same or
+     * own changes are still waiting to be saved.
+     */
+    private static void reload() {
+        AsyncPersistence.read(Settings::loadSettings).thenAccept(loaded -> {
+            synchronized(Settings.class) {
+                if(pendingSave != null || loaded.values.equals(current.values)) {
+                    return;
+                }
+                current = loaded;
+            }
+            Settings.notifyListeners(loaded);
+        }).exceptionally(AsyncPersistence::log);
+    }
+    
+    /**
+     * Passes a new snapshot to the listeners.
+     * @param settings New snapshot
      */
-    private void parseSettingFile(List<String> list) {
-        Setting tmpSetting;
-        for(int i = 0; i < list.size(); i++) {
-            tmpSetting = Setting.instanceOf(list.get(i)); 
-            this.list.put(tmpSetting.getKey(), tmpSetting);
+    private static void notifyListeners(Settings settings) {
+        for(Consumer<Settings> listener : LISTENERS) {
+            try {
+                listener.accept(settings);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
         }
     }
 }
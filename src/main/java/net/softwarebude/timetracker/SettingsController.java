@@ -39,31 +39,32 @@ public class SettingsController implements Initializable {
     
     private final static String USESYSTEMTRAY = "useSystemTray";
     
-    private Settings settings;
     @FXML private CheckBox cbUseSystemTray;
+    @FXML private CheckBox cbHttpApi;
     
     /**
      * Initializes the controller class.
      */
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        // TODO
-        this.settings = new Settings();
-        this.settings.loadSettings();
-        
-        if(this.settings.getSettingBoolean(SettingsController.USESYSTEMTRAY)) {
-            cbUseSystemTray.fire();
-        }
+        this.cbUseSystemTray.setDisable(true);
+        this.cbHttpApi.setDisable(true);
+        Settings.shared().thenAcceptAsync(s -> {
+            this.cbUseSystemTray.setSelected(s.getSettingBoolean(SettingsController.USESYSTEMTRAY));
+            this.cbUseSystemTray.setDisable(false);
+            this.cbHttpApi.setText("Local HTTP API on port " + s.getSettingInteger(HttpApi.SETTING_PORT, HttpApi.DEFAULT_PORT));
+            this.cbHttpApi.setSelected(s.getSettingBoolean(HttpApi.SETTING_ENABLED));
+            this.cbHttpApi.setDisable(false);
+        }, AsyncPersistence.FX).exceptionally(AsyncPersistence::log);
     }
     
     @FXML
     public void handleUseSystemTrayCheckboxAction(ActionEvent e) {
-        if(this.settings.getSettingBoolean(SettingsController.USESYSTEMTRAY)) {
-            this.settings.setSettingBoolean(SettingsController.USESYSTEMTRAY, false);
-        } else {
-            this.settings.setSettingBoolean(SettingsController.USESYSTEMTRAY, true);
-        }
-        
-        this.settings.saveSettings();
+        Settings.update(SettingsController.USESYSTEMTRAY, String.valueOf(this.cbUseSystemTray.isSelected()));
+    }
+    
+    @FXML
+    public void handleHttpApiCheckboxAction(ActionEvent e) {
+        Settings.update(HttpApi.SETTING_ENABLED, String.valueOf(this.cbHttpApi.isSelected()));
     }
 }
@@ -23,25 +23,35 @@
  */
 package net.softwarebude.timetracker;
 
+import java.time.Instant;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Locale;
+import java.util.TimeZone;
 import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 
 /**
  * Represent one task.
+ * Times are kept as milliseconds since epoch. The observable properties for the
+ * table are only created when a table cell asks for them.
  * @author Matthias Fischer
  */
 public class Task {
     
-    private Boolean started = false;
+    static final long UNSET = Long.MIN_VALUE;
+    
+    private boolean started = false;
         
-    private Calendar dateStart;
-    private Calendar dateEnd;
+    private long startMillis = UNSET;
+    private long endMillis = UNSET;
+    private String project;
+    private String description;
     
     private SimpleStringProperty start;
     private SimpleStringProperty end;
-    private SimpleStringProperty project;
-    private SimpleStringProperty description;
+    private SimpleStringProperty projectProperty;
+    private SimpleStringProperty descriptionProperty;
     
     /**
      * Constructor for new tasks
@@ -49,8 +59,21 @@ public class Task {
      * @param description Project description
      */
     Task(String project, String description) {
-        this.project = new SimpleStringProperty(project);
-        this.description = new SimpleStringProperty(description);
+        this.project = Task.intern(project);
+        this.description = Task.intern(description);
+    }
+    
+    /**
+     * Constructor for finished tasks
+     * @param project Project name
+     * @param description Project description
+     * @param startMillis Start time in milliseconds since epoch
+     * @param endMillis End time in milliseconds since epoch
+     */
+    Task(String project, String description, long startMillis, long endMillis) {
+        this(project, description);
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
     }
     
     /**
@@ -61,12 +84,21 @@ public class Task {
         this.parseFileString(fileString);
     }
     
+    /**
+     * Creates a copy of the task, which can be changed without changing the task.
+     * @return Task with the same values
+     */
+    public Task copy() {
+        Task task = new Task(this.project, this.description, this.startMillis, this.endMillis);
+        task.started = this.started;
+        return task;
+    }
+    
     /**
      * Start recording time
      */
     public void start() {
-        this.dateStart = Calendar.getInstance(Locale.GERMANY);
-        this.start = new SimpleStringProperty(this.timeToString(this.dateStart));
+        this.updateStart(System.currentTimeMillis());
         this.started = true;
     }
     
@@ -74,8 +106,7 @@ public class Task {
      * Stop recording time
      */
     public void stop() {
-        this.dateEnd = Calendar.getInstance(Locale.GERMANY);
-        this.end = new SimpleStringProperty(this.timeToString(this.dateEnd));
+        this.updateEnd(System.currentTimeMillis());
         this.started = false;
     }
     
@@ -84,7 +115,18 @@ public class Task {
      * @return Start time as String
      */
     public String getStart() {
-        return this.start.getValue();
+        return this.getStartTime();
+    }
+    
+    /**
+     * Property of the start time, created on first use
+     * @return Start time property
+     */
+    public StringProperty startProperty() {
+        if(this.start == null) {
+            this.start = new SimpleStringProperty(this.getStartTime());
+        }
+        return this.start;
     }
     
     /**
@@ -92,7 +134,18 @@ public class Task {
      * @return End time as String
      */
     public String getEnd() {
-        return this.end.getValue();
+        return this.getEndTime();
+    }
+    
+    /**
+     * Property of the end time, created on first use
+     * @return End time property
+     */
+    public StringProperty endProperty() {
+        if(this.end == null) {
+            this.end = new SimpleStringProperty(this.getEndTime());
+        }
+        return this.end;
     }
     
     /**
@@ -100,7 +153,7 @@ public class Task {
      * @return Projectname as String
      */
     public String getProject() {
-        return this.project.getValue();
+        return this.project;
     }
     
     /**
@@ -108,7 +161,21 @@ public class Task {
      * @param s Projectname as String
      */
     public void setProject(String s) {
-        this.project.setValue(s);
+        this.project = Task.intern(s);
+        if(this.projectProperty != null) {
+            this.projectProperty.setValue(this.project);
+        }
+    }
+    
+    /**
+     * Property of the project name, created on first use
+     * @return Projectname property
+     */
+    public StringProperty projectProperty() {
+        if(this.projectProperty == null) {
+            this.projectProperty = new SimpleStringProperty(this.project);
+        }
+        return this.projectProperty;
     }
     
     /**
@@ -116,7 +183,7 @@ public class Task {
      * @return Project description as String
      */
     public String getDescription() {
-        return this.description.getValue();
+        return this.description;
     }
     
     /**
@@ -124,7 +191,21 @@ public class Task {
      * @param s Project description as String
      */
     public void setDescription(String s) {
-        this.description.setValue(s);
+        this.description = Task.intern(s);
+        if(this.descriptionProperty != null) {
+            this.descriptionProperty.setValue(this.description);
+        }
+    }
+    
+    /**
+     * Property of the project description, created on first use
+     * @return Project description property
+     */
+    public StringProperty descriptionProperty() {
+        if(this.descriptionProperty == null) {
+            this.descriptionProperty = new SimpleStringProperty(this.description);
+        }
+        return this.descriptionProperty;
     }
     
     /**
@@ -133,15 +214,9 @@ public class Task {
      * @return Boolean checks if the values are okay.
      */
     public Boolean setStartTime(String s) {
-        
-        String str[] = s.split(":");
-        int hours = Integer.parseInt(str[0]);
-        int minutes = Integer.parseInt(str[1]);
-        
-        if(hours >= 0 && hours < 25 && minutes >= 0 && minutes < 60) {
-            this.dateStart.set(Calendar.HOUR_OF_DAY, hours);
-            this.dateStart.set(Calendar.MINUTE, minutes);
-            this.start = new SimpleStringProperty(this.timeToString(this.dateStart));
+        long millis = Task.withTime(this.startMillis, s);
+        if(millis != UNSET) {
+            this.updateStart(millis);
             return true;
         }
         return false;
@@ -152,7 +227,7 @@ public class Task {
      * @return String "hh:mm" of start time
      */
     public String getStartTime() {
-        return (this.dateStart != null) ? this.timeToString(dateStart) : "";
+        return (this.startMillis != UNSET) ? Task.timeToString(this.startMillis) : "";
     }
     
     /**
@@ -161,15 +236,9 @@ public class Task {
      * @return Boolean checks if the values were okay
      */
     public Boolean setEndTime(String s) {
-        
-        String str[] = s.split(":");
-        int hours = Integer.parseInt(str[0]);
-        int minutes = Integer.parseInt(str[1]);
-        
-        if(hours >= 0 && hours < 25 && minutes >= 0 && minutes < 60) {
-            this.dateEnd.set(Calendar.HOUR_OF_DAY, hours);
-            this.dateEnd.set(Calendar.MINUTE, minutes);
-            this.end = new SimpleStringProperty(this.timeToString(this.dateEnd));
+        long millis = Task.withTime(this.endMillis, s);
+        if(millis != UNSET) {
+            this.updateEnd(millis);
             return true;
         }
         return false;
@@ -180,7 +249,31 @@ public class Task {
      * @return String "hh:mm" of end time
      */
     public String getEndTime() {
-        return (this.dateEnd != null) ? this.timeToString(dateEnd) : "";
+        return (this.endMillis != UNSET) ? Task.timeToString(this.endMillis) : "";
+    }
+    
+    /**
+     * Get the day of the start time in "yyyy-mm-dd" format
+     * @return String day of the start time
+     */
+    public String getDate() {
+        return (this.startMillis != UNSET) ? Instant.ofEpochMilli(this.startMillis).atZone(ZoneId.systemDefault()).toLocalDate().toString() : "";
+    }
+    
+    /**
+     * Get start time of a task in milliseconds since epoch
+     * @return long start time
+     */
+    public long getStartMillis() {
+        return this.startMillis;
+    }
+    
+    /**
+     * Get end time of a task in milliseconds since epoch
+     * @return long end time
+     */
+    public long getEndMillis() {
+        return this.endMillis;
     }
     
     /**
@@ -188,8 +281,7 @@ public class Task {
      * @param date Calendar date
      */
     public void setDateStart(Calendar date) {
-        this.dateStart = date;
-        this.start = new SimpleStringProperty(this.timeToString(this.dateStart));
+        this.updateStart(date.getTimeInMillis());
     }
     
     /**
@@ -197,8 +289,7 @@ public class Task {
      * @param date Calendar date
      */
     public void setDateEnd(Calendar date) {
-        this.dateEnd = date;
-        this.end = new SimpleStringProperty(this.timeToString(this.dateEnd));
+        this.updateEnd(date.getTimeInMillis());
     }
     
     /**
@@ -214,10 +305,7 @@ public class Task {
      * @return Task as String
      */
     public String toFileString() {
-        return this.project.getValue() + ";;;" 
-                + this.description.getValue() + ";;;" 
-                + Long.toString(this.dateStart.getTimeInMillis()) + ";;;" 
-                + Long.toString(this.dateEnd.getTimeInMillis()) + ";;;";
+        return TaskCodec.encode(this, new StringBuilder(64 + this.project.length() + this.description.length())).toString();
     }
     
     /**
@@ -237,27 +325,85 @@ public class Task {
      * @param str Filestring
      */
     private void parseFileString(String str) {
-        String[] string = str.split(";;;");
-        this.project = new SimpleStringProperty(string[0]);
-        this.description = new SimpleStringProperty(string[1]);
+        int count = TaskCodec.local().decode(str, (p, d, s, e) -> {
+            this.project = Task.intern(p);
+            this.description = Task.intern(d);
+            this.startMillis = s;
+            this.endMillis = e;
+        });
         
-        this.dateStart = Calendar.getInstance(Locale.GERMANY);
-        this.dateStart.setTimeInMillis(Long.parseLong(string[2], 10));
-        this.start = new SimpleStringProperty(this.timeToString(this.dateStart));
+        if(count != 1) {
+            throw new IllegalArgumentException("Invalid task row: " + str);
+        }
+    }
+    
+    /**
+     * Sets the start time and updates its property if it exists.
+     * @param millis Start time in milliseconds since epoch
+     */
+    private void updateStart(long millis) {
+        this.startMillis = millis;
+        if(this.start != null) {
+            this.start.setValue(this.getStartTime());
+        }
+    }
+    
+    /**
+     * Sets the end time and updates its property if it exists.
+     * @param millis End time in milliseconds since epoch
+     */
+    private void updateEnd(long millis) {
+        this.endMillis = millis;
+        if(this.end != null) {
+            this.end.setValue(this.getEndTime());
+        }
+    }
+    
+    /**
+     * Changes hours and minutes of a point in time.
+     * @param millis Point in time in milliseconds since epoch
+     * @param s time in "hh:mm" format
+     * @return Changed point in time or UNSET if the time is not okay
+     */
+    private static long withTime(long millis, String s) {
+        String str[] = s.split(":");
+        int hours = Integer.parseInt(str[0]);
+        int minutes = Integer.parseInt(str[1]);
         
-        this.dateEnd = Calendar.getInstance(Locale.GERMANY);
-        this.dateEnd.setTimeInMillis(Long.parseLong(string[3], 10));
-        this.end = new SimpleStringProperty(this.timeToString(this.dateEnd));
+        if(hours >= 0 && hours < 25 && minutes >= 0 && minutes < 60) {
+            Calendar cal = Calendar.getInstance(Locale.GERMANY);
+            cal.setTimeInMillis(millis);
+            cal.set(Calendar.HOUR_OF_DAY, hours);
+            cal.set(Calendar.MINUTE, minutes);
+            return cal.getTimeInMillis();
+        }
+        return UNSET;
     }
     
     /**
-     * Parse date into a time string like '12:42'
-     * @param cal Calender that should be converted
+     * Parse a point in time into a time string like '12:42'
+     * @param millis Point in time in milliseconds since epoch
      * @return Time as String
      */
-    private String timeToString(Calendar cal) {
-        return Task.correctLength(Integer.toString(cal.get(Calendar.HOUR_OF_DAY))) 
-                + ":" 
-                + Task.correctLength(Integer.toString(cal.get(Calendar.MINUTE)));
+    private static String timeToString(long millis) {
+        long local = millis + TimeZone.getDefault().getOffset(millis);
+        int minuteOfDay = (int)Math.floorMod(Math.floorDiv(local, 60000L), 1440L);
+        int hours = minuteOfDay / 60;
+        int minutes = minuteOfDay % 60;
+        
+        return new StringBuilder(5)
+                .append((char)('0' + hours / 10)).append((char)('0' + hours % 10))
+                .append(':')
+                .append((char)('0' + minutes / 10)).append((char)('0' + minutes % 10))
+                .toString();
+    }
+    
+    /**
+     * Returns the canonical instance of a name, so equal names of many tasks share one String.
+     * @param s Name
+     * @return Canonical String
+     */
+    private static String intern(String s) {
+        return (s != null) ? s.intern() : null;
     }
 }
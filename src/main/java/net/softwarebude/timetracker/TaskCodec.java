@@ -0,0 +1,400 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser and serializer for the task rows of day files
+ * ("project;;;description;;;start;;;end;;;").
+ * A whole day or month buffer is parsed in one pass by index scanning. Numbers are
+ * parsed in place, no Calendars are created, project names are shared between tasks
+ * and the read buffers are reused. An instance is not thread-safe, use {@link #local()}.
+ * @author Matthias Fischer
+ */
+public class TaskCodec {
+    
+    /**
+     * Receives the fields of decoded tasks.
+     */
+    public interface TaskConsumer {
+        
+        /**
+         * Called for every decoded task.
+         * @param project Project name
+         * @param description Project description
+         * @param startMillis Start time in milliseconds since epoch
+         * @param endMillis End time in milliseconds since epoch
+         */
+        void accept(String project, String description, long startMillis, long endMillis);
+    }
+    
+    private static final String SEPARATOR = ";;;";
+    private static final String UNSET = Long.toString(Task.UNSET);
+    private static final ThreadLocal<TaskCodec> LOCAL = ThreadLocal.withInitial(TaskCodec::new);
+    
+    private final CharsetDecoder decoder;
+    private ByteBuffer bytes;
+    private CharBuffer chars;
+    
+    private String[] names;
+    private int nameCount;
+    
+    private final int[] fieldEnds = new int[4];
+    
+    TaskCodec() {
+        this.decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(8192);
+        this.chars = CharBuffer.allocate(8192);
+        this.names = new String[64];
+    }
+    
+    /**
+     * Getter of the codec of the current thread
+     * @return TaskCodec
+     */
+    public static TaskCodec local() {
+        return LOCAL.get();
+    }
+    
+    /**
+     * Reads the tasks of a day file including changes of its journal.
+     * @param path Path to the day file
+     * @return Tasks in file order
+     */
+    public List<Task> readDay(String path) {
+        List<Task> tasks = new ArrayList<>();
+        this.forEachTask(path, (p, d, s, e) -> tasks.add(new Task(p, d, s, e)));
+        return tasks;
+    }
+    
+    /**
+     * Decodes the tasks of a day file including changes of its journal without creating Task objects.
+     * @param path Path to the day file
+     * @param consumer Receives the tasks in file order
+     * @return Number of tasks
+     */
+    public int forEachTask(String path, TaskConsumer consumer) {
+        if(new File(TaskJournal.getJournalPath(path)).exists()) {
+            int count = 0;
+            List<String> lines = EditTaskFiles.readTasks(path);
+            for(int i = 0; i < lines.size(); i++) {
+                count += this.decode(lines.get(i), consumer);
+            }
+            return count;
+        }
+        return this.decodeFile(path, consumer);
+    }
+    
+    /**
+     * Decodes the tasks of a day file without changes of its journal.
+     * @param path Path to the day file
+     * @param consumer Receives the tasks in file order
+     * @return Number of tasks
+     */
+    public int decodeFile(String path, TaskConsumer consumer) {
+        try {
+            return this.decode(this.load(path), consumer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+    
+    /**
+     * Decodes all task rows of a buffer in one pass. Incomplete rows are skipped.
+     * @param buf Rows separated by line breaks
+     * @param consumer Receives the tasks
+     * @return Number of decoded tasks
+     */
+    public int decode(CharSequence buf, TaskConsumer consumer) {
+        int count = 0;
+        int length = buf.length();
+        int lineStart = 0;
+        
+        while(lineStart < length) {
+            int lineEnd = TaskCodec.lineEnd(buf, lineStart, length);
+            if(this.scanFields(buf, lineStart, lineEnd)) {
+                int[] ends = this.fieldEnds;
+                int startFrom = ends[1] + SEPARATOR.length();
+                int endFrom = ends[2] + SEPARATOR.length();
+                long start = TaskCodec.parseLong(buf, startFrom, ends[2]);
+                long end = TaskCodec.parseLong(buf, endFrom, ends[3]);
+                if(TaskCodec.isTime(start, buf, startFrom, ends[2]) && TaskCodec.isTime(end, buf, endFrom, ends[3])) {
+                    consumer.accept(this.name(buf, lineStart, ends[0]),
+                            TaskCodec.string(buf, ends[0] + SEPARATOR.length(), ends[1]),
+                            start, end);
+                    count++;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        Metrics.TASKS_PARSED.add(count);
+        return count;
+    }
+    
+    /**
+     * Appends the file row of a task.
+     * @param task Task
+     * @param out Builder to append to
+     * @return The passed builder
+     */
+    public static StringBuilder encode(Task task, StringBuilder out) {
+        return TaskCodec.encode(task.getProject(), task.getDescription(), task.getStartMillis(), task.getEndMillis(), out);
+    }
+    
+    /**
+     * Appends the file row of task fields.
+     * @param project Project name
+     * @param description Project description
+     * @param startMillis Start time in milliseconds since epoch
+     * @param endMillis End time in milliseconds since epoch
+     * @param out Builder to append to
+     * @return The passed builder
+     */
+    public static StringBuilder encode(String project, String description, long startMillis, long endMillis, StringBuilder out) {
+        return out.append(project).append(SEPARATOR)
+                .append(description).append(SEPARATOR)
+                .append(startMillis).append(SEPARATOR)
+                .append(endMillis).append(SEPARATOR);
+    }
+    
+    /**
+     * Parses a decimal number in place.
+     * @param buf Buffer containing the number
+     * @param from Index of the first character
+     * @param to Index after the last digit
+     * @return Number or Long.MIN_VALUE if the range is no number
+     */
+    static long parseLong(CharSequence buf, int from, int to) {
+        boolean negative = from < to && buf.charAt(from) == '-';
+        int first = negative ? from + 1 : from;
+        if(first >= to || to - first > 18) {
+            return Long.MIN_VALUE;
+        }
+        
+        long value = 0;
+        for(int i = first; i < to; i++) {
+            char c = buf.charAt(i);
+            if(c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+    
+    /**
+     * Checks if a parsed time field was a number. Unset times (Task.UNSET) are written as
+     * Long.MIN_VALUE, which parseLong also returns for no number.
+     * @param value Parsed value
+     * @param buf Buffer containing the field
+     * @param from Index of the first character
+     * @param to Index after the last character
+     * @return Boolean
+     */
+    private static boolean isTime(long value, CharSequence buf, int from, int to) {
+        return value != Long.MIN_VALUE || TaskCodec.regionEquals(UNSET, buf, from, to);
+    }
+    
+    /**
+     * Creates a String out of a range of a buffer without an intermediate view.
+     * @param buf Buffer
+     * @param from Start index
+     * @param to End index
+     * @return String
+     */
+    private static String string(CharSequence buf, int from, int to) {
+        if(buf instanceof CharBuffer && ((CharBuffer)buf).hasArray()) {
+            CharBuffer cb = (CharBuffer)buf;
+            return new String(cb.array(), cb.arrayOffset() + cb.position() + from, to - from);
+        }
+        return buf.subSequence(from, to).toString();
+    }
+    
+    /**
+     * Finds the end of a row.
+     * @param buf Buffer containing the row
+     * @param from Start index of the row
+     * @param length Length of the buffer
+     * @return Index of the line break or the length of the buffer
+     */
+    private static int lineEnd(CharSequence buf, int from, int length) {
+        for(int i = from; i < length; i++) {
+            char c = buf.charAt(i);
+            if(c == '\n' || c == '\r') {
+                return i;
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * Finds the ends of the four fields of a row. Times never start with ';', so the
+     * separators after the description are the last three of a run of ';' and a
+     * description may end with ';'.
+     * @param buf Buffer containing the row
+     * @param from Start index of the row
+     * @param to End index of the row
+     * @return Boolean if the row contains four fields
+     */
+    private boolean scanFields(CharSequence buf, int from, int to) {
+        int field = 0;
+        int i = from;
+        while(field < 4 && i + SEPARATOR.length() <= to) {
+            if(buf.charAt(i) == ';' && buf.charAt(i + 1) == ';' && buf.charAt(i + 2) == ';') {
+                while(field > 0 && i + SEPARATOR.length() < to && buf.charAt(i + SEPARATOR.length()) == ';') {
+                    i++;
+                }
+                this.fieldEnds[field++] = i;
+                i += SEPARATOR.length();
+            } else {
+                i++;
+            }
+        }
+        return field == 4;
+    }
+    
+    /**
+     * Returns a shared String for a project name, which is only created
+     * when the name was not seen before by this codec.
+     * @param buf Buffer containing the name
+     * @param from Start index of the name
+     * @param to End index of the name
+     * @return Project name
+     */
+    private String name(CharSequence buf, int from, int to) {
+        int hash = 0;
+        for(int i = from; i < to; i++) {
+            hash = 31 * hash + buf.charAt(i);
+        }
+        
+        int mask = this.names.length - 1;
+        int slot = hash & mask;
+        String name;
+        while((name = this.names[slot]) != null) {
+            if(name.hashCode() == hash && TaskCodec.regionEquals(name, buf, from, to)) {
+                return name;
+            }
+            slot = (slot + 1) & mask;
+        }
+        
+        name = TaskCodec.string(buf, from, to);
+        this.names[slot] = name;
+        if(++this.nameCount * 2 > this.names.length) {
+            this.growNames();
+        }
+        return name;
+    }
+    
+    /**
+     * Doubles the size of the project name table.
+     */
+    private void growNames() {
+        String[] old = this.names;
+        this.names = new String[old.length * 2];
+        int mask = this.names.length - 1;
+        for(String name : old) {
+            if(name != null) {
+                int slot = name.hashCode() & mask;
+                while(this.names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.names[slot] = name;
+            }
+        }
+    }
+    
+    /**
+     * Compares a String with a range of a buffer.
+     * @param str String
+     * @param buf Buffer
+     * @param from Start index in the buffer
+     * @param to End index in the buffer
+     * @return Boolean
+     */
+    private static boolean regionEquals(String str, CharSequence buf, int from, int to) {
+        if(str.length() != to - from) {
+            return false;
+        }
+        for(int i = 0; i < str.length(); i++) {
+            if(str.charAt(i) != buf.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Reads a file into the reused character buffer.
+     * @param path Path to the file
+     * @return Content of the file, valid until the next call
+     * @throws IOException if the file can't be read
+     */
+    private CharBuffer load(String path) throws IOException {
+        File file = new File(path);
+        if(!file.exists()) {
+            return CharBuffer.allocate(0);
+        }
+        
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            int size = (int)channel.size();
+            if(this.bytes.capacity() < size) {
+                this.bytes = ByteBuffer.allocate(Integer.highestOneBit(size) << 1);
+            }
+            this.bytes.clear();
+            while(this.bytes.position() < size && channel.read(this.bytes) >= 0) {
+                // read until the buffer holds the whole file
+            }
+            this.bytes.flip();
+        }
+        Metrics.BYTES_READ.add(this.bytes.remaining());
+        
+        int maxChars = (int)(this.bytes.remaining() * this.decoder.maxCharsPerByte()) + 1;
+        if(this.chars.capacity() < maxChars) {
+            this.chars = CharBuffer.allocate(Integer.highestOneBit(maxChars) << 1);
+        }
+        this.chars.clear();
+        this.decoder.reset();
+        if(this.decoder.decode(this.bytes, this.chars, true).isError() || this.decoder.flush(this.chars).isError()) {
+            throw new CharacterCodingException();
+        }
+        this.chars.flip();
+        return this.chars;
+    }
+}
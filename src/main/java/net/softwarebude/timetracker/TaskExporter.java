@@ -0,0 +1,251 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.TimeZone;
+
+/**
+ * Streaming export of tasks into CSV or JSON.
+ * The days are read in date order and every task is written as soon as
+ * it is decoded, so the memory use doesn't depend on the length of the range.
+ * @author Matthias Fischer
+ */
+public class TaskExporter {
+    
+    /**
+     * Output formats of an export.
+     */
+    public enum Format {
+        CSV, JSON
+    }
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final Writer out;
+    private final Format format;
+    private final String project;
+    private final TimeZone zone = TimeZone.getDefault();
+    private final char[] date = new char[10];
+    private long count;
+    
+    private TaskExporter(OutputStream out, Format format, String project) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.format = format;
+        this.project = (project == null || project.isEmpty()) ? null : project;
+    }
+    
+    /**
+     * Writes all tasks of a date range. The stream is flushed but not closed.
+     * @param from First day of the range
+     * @param to Last day of the range (inclusive)
+     * @param project Only tasks of this project are written, null for all projects
+     * @param format Output format
+     * @param out Target stream
+     * @return Number of written tasks
+     * @throws IOException if the stream can't be written
+     */
+    public static long export(LocalDate from, LocalDate to, String project, Format format, OutputStream out) throws IOException {
+        TaskExporter exporter = new TaskExporter(out, format, project);
+        exporter.begin();
+        try {
+            TaskRepository repository = new DayFileRepository();
+            for(LocalDate day : repository.days(from, to)) {
+                exporter.exportDay(repository, day);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        exporter.end();
+        return exporter.count;
+    }
+    
+    /**
+     * Writes the tasks of one day.
+     * @param repository Repository to read from
+     * @param day Day to export
+     */
+    private void exportDay(TaskRepository repository, LocalDate day) {
+        day.toString().getChars(0, 10, this.date, 0);
+        repository.forEachOfDay(day, (p, d, s, e) -> {
+            if(this.project != null && !this.project.equals(p)) {
+                return;
+            }
+            try {
+                if(this.format == Format.CSV) {
+                    this.writeCsv(p, d, s, e);
+                } else {
+                    this.writeJson(p, d, s, e);
+                }
+                this.count++;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+    
+    /**
+     * Writes the start of the output.
+     * @throws IOException if the stream can't be written
+     */
+    private void begin() throws IOException {
+        if(this.format == Format.CSV) {
+            this.out.write("date,start,end,minutes,project,description\r\n");
+        } else {
+            this.out.write('[');
+        }
+    }
+    
+    /**
+     * Writes the end of the output and flushes it.
+     * @throws IOException if the stream can't be written
+     */
+    private void end() throws IOException {
+        if(this.format == Format.JSON) {
+            this.out.write((this.count > 0) ? "\n]\n" : "]\n");
+        }
+        this.out.flush();
+    }
+    
+    /**
+     * Writes one task as CSV row (RFC 4180).
+     */
+    private void writeCsv(String project, String description, long start, long end) throws IOException {
+        this.out.write(this.date);
+        this.out.write(',');
+        this.writeTime(start);
+        this.out.write(',');
+        this.writeTime(end);
+        this.out.write(',');
+        this.writeMinutes(start, end);
+        this.out.write(',');
+        this.writeCsvString(project);
+        this.out.write(',');
+        this.writeCsvString(description);
+        this.out.write("\r\n");
+    }
+    
+    /**
+     * Writes one task as JSON object.
+     */
+    private void writeJson(String project, String description, long start, long end) throws IOException {
+        this.out.write((this.count > 0) ? ",\n{\"date\":\"" : "\n{\"date\":\"");
+        this.out.write(this.date);
+        this.out.write("\",\"start\":\"");
+        this.writeTime(start);
+        this.out.write("\",\"end\":\"");
+        this.writeTime(end);
+        this.out.write("\",\"minutes\":");
+        if(start != Task.UNSET && end != Task.UNSET) {
+            this.writeMinutes(start, end);
+        } else {
+            this.out.write("null");
+        }
+        this.out.write(",\"project\":");
+        TaskExporter.writeJsonString(this.out, project);
+        this.out.write(",\"description\":");
+        TaskExporter.writeJsonString(this.out, description);
+        this.out.write('}');
+    }
+    
+    /**
+     * Writes a time in "hh:mm" format, nothing if it's unset.
+     */
+    private void writeTime(long millis) throws IOException {
+        if(millis == Task.UNSET) {
+            return;
+        }
+        long minutes = Math.floorMod(Math.floorDiv(millis + this.zone.getOffset(millis), 60000L), 24L * 60);
+        int hours = (int) (minutes / 60);
+        int mins = (int) (minutes % 60);
+        this.out.write('0' + hours / 10);
+        this.out.write('0' + hours % 10);
+        this.out.write(':');
+        this.out.write('0' + mins / 10);
+        this.out.write('0' + mins % 10);
+    }
+    
+    /**
+     * Writes the duration of a task in minutes, nothing if it isn't finished.
+     */
+    private void writeMinutes(long start, long end) throws IOException {
+        if(start != Task.UNSET && end != Task.UNSET) {
+            this.out.write(Long.toString((end - start) / 60000));
+        }
+    }
+    
+    /**
+     * Writes a CSV field, quoted if it contains separators, quotes or line breaks.
+     */
+    private void writeCsvString(String str) throws IOException {
+        boolean quote = false;
+        for(int i = 0; i < str.length() && !quote; i++) {
+            char c = str.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        
+        if(!quote) {
+            this.out.write(str);
+            return;
+        }
+        this.out.write('"');
+        for(int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if(c == '"') {
+                this.out.write('"');
+            }
+            this.out.write(c);
+        }
+        this.out.write('"');
+    }
+    
+    /**
+     * Writes a quoted and escaped JSON string.
+     * @param out Target writer
+     * @param str String to write
+     * @throws IOException if the writer fails
+     */
+    static void writeJsonString(Writer out, String str) throws IOException {
+        out.write('"');
+        for(int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if(c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if(c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
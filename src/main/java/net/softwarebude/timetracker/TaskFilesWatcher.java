@@ -0,0 +1,277 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Notices day files, journals and the project list which were changed by another program,
+ * e.g. a file synchronization. Own writes record the size and modification time of their
+ * files, so only foreign changes are reported. For a changed day the cached day, the search
+ * index and the rollup of the month are updated with the difference to the known tasks and
+ * the listeners get the path of the day file as the application builds it
+ * (EditTaskFiles.getFilePath), whatever path the file was watched by.
+ * @author Matthias Fischer
+ */
+public class TaskFilesWatcher {
+    
+    private static final String PATH_FILES = "./files";
+    private static final String PROJECTS = "projectlist.txt";
+    private static final String PATH_PROJECTS = PATH_FILES + "/" + PROJECTS;
+    private static final long DELAY_MILLIS = 300;
+    private static final Pattern DAY = Pattern.compile("\\d{4}-\\d{2}-\\d{2}(\\.txt|" + Pattern.quote(TaskJournal.EXTENSION) + ")");
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+    
+    private static final Map<String, String> KNOWN = new ConcurrentHashMap<>();
+    private static final Map<String, ScheduledFuture<?>> PENDING = new ConcurrentHashMap<>();
+    private static final List<Consumer<String>> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "files-watcher");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private static volatile boolean started;
+    
+    TaskFilesWatcher() {
+    }
+    
+    /**
+     * Starts to watch the files directory with its year and month directories.
+     * New directories are watched as soon as they appear.
+     */
+    public static synchronized void start() {
+        if(started) {
+            return;
+        }
+        started = true;
+        TaskFilesWatcher.watchTree(Paths.get(PATH_FILES), 0, true);
+    }
+    
+    /**
+     * Adds a listener which gets the path of every day file (ending with .txt) or project
+     * list that was changed by another program. It is called on a background thread.
+     * @param listener Listener
+     */
+    public static void addListener(Consumer<String> listener) {
+        LISTENERS.add(listener);
+    }
+    
+    /**
+     * Runs an own write and remembers the state of the file afterwards, so its event is ignored.
+     * A foreign change which wasn't checked before the write is still reported.
+     * Day files are written while the lock of the journal is held.
+     * @param path Path to the day file or the project list
+     * @param write Write of the file
+     */
+    public static void write(String path, Runnable write) {
+        if(!started) {
+            write.run();
+            return;
+        }
+        
+        String before = TaskFilesWatcher.signature(path);
+        write.run();
+        String after = TaskFilesWatcher.signature(path);
+        KNOWN.compute(TaskFilesWatcher.key(path), (p, known) -> (known == null || known.equals(before)) ? after : known);
+    }
+    
+    /**
+     * Watches a directory and its subdirectories down to the months.
+     * @param directory Directory
+     * @param depth 0 for the files directory, 1 for a year and 2 for a month
+     * @param initial Boolean if the existing files are known, otherwise they are checked
+     */
+    private static void watchTree(Path directory, int depth, boolean initial) {
+        try {
+            FileWatcher.watch(directory, changed -> TaskFilesWatcher.changed(changed, depth));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        
+        File[] children = directory.toFile().listFiles();
+        if(children == null) {
+            return;
+        }
+        for(File child : children) {
+            if(depth < 2 && child.isDirectory() && NUMBER.matcher(child.getName()).matches()) {
+                TaskFilesWatcher.watchTree(child.toPath(), depth + 1, initial);
+            } else if(depth == 2 && DAY.matcher(child.getName()).matches()) {
+                String path = TaskFilesWatcher.getDayPath(child.toPath());
+                if(initial) {
+                    KNOWN.put(TaskFilesWatcher.key(path), TaskFilesWatcher.signature(path));
+                } else {
+                    // files of a new month may have been written before it was watched
+                    TaskFilesWatcher.schedule(path);
+                }
+            } else if(depth == 0 && child.getName().equals(PROJECTS)) {
+                KNOWN.put(TaskFilesWatcher.key(PATH_PROJECTS), TaskFilesWatcher.signature(PATH_PROJECTS));
+            }
+        }
+    }
+    
+    /**
+     * Handles an event of the file watcher.
+     * @param changed Changed file or the directory, if events were lost
+     * @param depth Depth of the watched directory
+     */
+    private static void changed(Path changed, int depth) {
+        String name = changed.getFileName().toString();
+        File file = changed.toFile();
+        
+        if(depth < 2 && file.isDirectory() && NUMBER.matcher(name).matches()) {
+            TaskFilesWatcher.watchTree(changed, depth + 1, false);
+        } else if(depth == 0 && name.equals(PROJECTS)) {
+            TaskFilesWatcher.schedule(PATH_PROJECTS);
+        } else if(depth == 2 && DAY.matcher(name).matches()) {
+            TaskFilesWatcher.schedule(TaskFilesWatcher.getDayPath(changed));
+        } else if(depth == 2 && file.isDirectory()) {
+            // lost events: check every day of the month
+            File[] days = file.listFiles((dir, day) -> DAY.matcher(day).matches());
+            if(days != null) {
+                for(File day : days) {
+                    TaskFilesWatcher.schedule(TaskFilesWatcher.getDayPath(day.toPath()));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Checks a file a moment after its last event, so a file which is still being written isn't read.
+     * @param path Path to the day file or the project list
+     */
+    private static void schedule(String path) {
+        ScheduledFuture<?> check = SCHEDULER.schedule(() -> {
+            PENDING.remove(path);
+            AsyncPersistence.write(() -> TaskFilesWatcher.check(path));
+        }, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        
+        ScheduledFuture<?> previous = PENDING.put(path, check);
+        if(previous != null) {
+            previous.cancel(false);
+        }
+    }
+    
+    /**
+     * Updates the caches and derived files after a foreign change and informs the listeners.
+     * It runs on the writer thread, so all own writes before the event are done.
+     * @param path Path to the day file or the project list
+     */
+    private static void check(String path) {
+        synchronized(TaskJournal.LOCK) {
+            String signature = TaskFilesWatcher.signature(path);
+            if(signature.equals(KNOWN.put(TaskFilesWatcher.key(path), signature))) {
+                return;
+            }
+        }
+        
+        if(!path.equals(PATH_PROJECTS)) {
+            List<Task> before = DayCache.getIfPresent(TaskFilesWatcher.getDate(path));
+            List<Task> tasks = TaskCodec.local().readDay(path);
+            
+            Map<String, Integer> known = new HashMap<>();
+            if(before != null) {
+                before.forEach(t -> known.merge(t.toFileString(), 1, Integer::sum));
+            }
+            List<Task> added = new ArrayList<>();
+            for(Task task : tasks) {
+                if(known.merge(task.toFileString(), -1, Integer::sum) < 0) {
+                    added.add(task);
+                }
+            }
+            
+            DayCache.put(path, tasks);
+            HistoryReader.invalidate(path);
+            Rollups.refreshDay(path);
+            SearchIndex.update(path, added);
+        }
+        
+        for(Consumer<String> listener : LISTENERS) {
+            try {
+                listener.accept(path);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Describes the state of a day file and its journal by their sizes and modification times.
+     * @param path Path to the day file
+     * @return Signature
+     */
+    private static String signature(String path) {
+        File file = new File(path);
+        File journal = new File(TaskJournal.getJournalPath(path));
+        return file.length() + ":" + file.lastModified() + ":" + journal.length() + ":" + journal.lastModified();
+    }
+    
+    /**
+     * Converts the path of a day file or journal into the path of the day file.
+     * @param file Day file or journal
+     * @return Path to the day file, as EditTaskFiles.getFilePath creates it
+     */
+    private static String getDayPath(Path file) {
+        return EditTaskFiles.getFilePath(TaskFilesWatcher.getDate(file.getFileName().toString()));
+    }
+    
+    /**
+     * Reads the date out of the name of a day file or journal.
+     * @param path Path or name of the file
+     * @return Date of the day
+     */
+    private static Calendar getDate(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        Calendar date = Calendar.getInstance();
+        date.clear();
+        date.set(Integer.parseInt(name.substring(0, 4)), Integer.parseInt(name.substring(5, 7)) - 1, Integer.parseInt(name.substring(8, 10)));
+        return date;
+    }
+    
+    /**
+     * Normalizes a path, so "./files/x" and "files/x" are the same known file.
+     * @param path Path to the file
+     * @return Absolute and normalized path
+     */
+    private static String key(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+}
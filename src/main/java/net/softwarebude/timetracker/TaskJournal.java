@@ -0,0 +1,300 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Append-only journal of task changes next to a day file.
+ * Every add, edit or delete is written as one record, loads replay the journal
+ * on top of the day file and a background compactor folds it back into the day file.
+ * Record format (one per line):
+ * '+' task  - task was added
+ * '-' task  - task was removed
+ * '~' old new - task was replaced in place
+ * @author Matthias Fischer
+ */
+public class TaskJournal {
+    
+    public static final String EXTENSION = ".journal";
+    
+    private static final char ADD = '+';
+    private static final char REMOVE = '-';
+    private static final char REPLACE = '~';
+    private static final String SEPARATOR = ";;;";
+    
+    private static final long COMPACT_DELAY_SECONDS = 30;
+    
+    static final Object LOCK = new Object();
+    private static final Set<String> PENDING = new HashSet<>();
+    private static final ScheduledExecutorService COMPACTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(TaskJournal::compactPending, "journal-shutdown"));
+    }
+    
+    /**
+     * Converts the path of a day file into the path of its journal.
+     * @param dayPath Path to the day file
+     * @return Path to the journal as a String
+     */
+    public static String getJournalPath(String dayPath) {
+        int dot = dayPath.lastIndexOf('.');
+        return ((dot > dayPath.lastIndexOf('/')) ? dayPath.substring(0, dot) : dayPath) + TaskJournal.EXTENSION;
+    }
+    
+    /**
+     * Writes an add-record for a task.
+     * @param dayPath Path to the day file
+     * @param task Task that was added
+     */
+    public static void add(String dayPath, Task task) {
+        TaskJournal.append(dayPath, ADD + task.toFileString());
+    }
+    
+    /**
+     * Writes a remove-record for a task.
+     * @param dayPath Path to the day file
+     * @param task Task that was removed
+     */
+    public static void remove(String dayPath, Task task) {
+        TaskJournal.append(dayPath, REMOVE + task.toFileString());
+    }
+    
+    /**
+     * Writes a replace-record for an edited task.
+     * @param dayPath Path to the day file
+     * @param oldFileString File string of the task before it was edited
+     * @param task Edited task
+     */
+    public static void replace(String dayPath, String oldFileString, Task task) {
+        TaskJournal.append(dayPath, REPLACE + oldFileString + task.toFileString());
+    }
+    
+    /**
+     * Reads the rows of a day file with its journal replayed on top.
+     * @param dayPath Path to the day file
+     * @return Current task rows of the day
+     */
+    public static List<String> read(String dayPath) {
+        synchronized(LOCK) {
+            List<String> lines = EditTaskFiles.readFile(dayPath);
+            Metrics.BYTES_READ.add(new File(dayPath).length());
+            File journal = new File(TaskJournal.getJournalPath(dayPath));
+            if(journal.exists()) {
+                TaskJournal.replay(lines, EditTaskFiles.readFile(journal.getPath()));
+                Metrics.BYTES_READ.add(journal.length());
+            }
+            return lines;
+        }
+    }
+    
+    /**
+     * Folds the journal of a day back into the day file and removes the journal.
+     * If the day file can't be replaced, the journal is kept and the compaction is tried again later.
+     * The files are locked, so no other process appends to the journal in the meantime.
+     * @param dayPath Path to the day file
+     */
+    public static void compact(String dayPath) {
+        try {
+            FilesLock.locked(() -> {
+                Rollups.compact(dayPath, () -> {
+                    synchronized(LOCK) {
+                        PENDING.remove(dayPath);
+                        File journal = new File(TaskJournal.getJournalPath(dayPath));
+                        if(!journal.exists()) {
+                            return;
+                        }
+                        
+                        try {
+                            TaskJournal.rewrite(dayPath, FXCollections.observableArrayList(TaskJournal.read(dayPath)));
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            TaskJournal.schedule(dayPath);
+                        }
+                    }
+                });
+                return null;
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            TaskJournal.schedule(dayPath);
+        }
+    }
+    
+    /**
+     * Rewrites a whole day file and drops its journal, which is contained in the new rows.
+     * The journal is only deleted after the new day file is durably in place.
+     * @param dayPath Path to the day file
+     * @param lines All task rows of the day
+     * @throws IOException if the day file can't be replaced, the old day file and the journal are kept then
+     */
+    public static void rewrite(String dayPath, ObservableList<String> lines) throws IOException {
+        FilesLock.locked(() -> {
+            synchronized(LOCK) {
+                IOException[] error = new IOException[1];
+                TaskFilesWatcher.write(dayPath, () -> {
+                    try {
+                        EditTaskFiles.replaceFile(dayPath, lines, true);
+                    } catch (IOException e) {
+                        error[0] = e;
+                        return;
+                    }
+                    Metrics.BYTES_WRITTEN.add(new File(dayPath).length());
+                    File journal = new File(TaskJournal.getJournalPath(dayPath));
+                    if(journal.exists() && !journal.delete()) {
+                        System.err.println("Can't delete journal " + journal.getPath());
+                    }
+                });
+                if(error[0] != null) {
+                    throw error[0];
+                }
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * Compacts all days with scheduled compactions immediately.
+     */
+    public static void compactPending() {
+        String[] paths;
+        synchronized(LOCK) {
+            paths = PENDING.toArray(new String[PENDING.size()]);
+        }
+        Arrays.stream(paths).forEach(TaskJournal::compact);
+    }
+    
+    /**
+     * Replays journal records on top of the rows of a day file.
+     * Incomplete records (e.g. of an interrupted write) are skipped.
+     * @param lines Rows of the day file, will be modified
+     * @param records Journal records
+     */
+    static void replay(List<String> lines, List<String> records) {
+        for(int i = 0; i < records.size(); i++) {
+            String record = records.get(i);
+            if(record.length() < 2) {
+                continue;
+            }
+            
+            String body = record.substring(1);
+            switch(record.charAt(0)) {
+                case ADD:
+                    if(TaskJournal.taskEnd(body, 0) == body.length()) {
+                        lines.add(body);
+                    }
+                    break;
+                case REMOVE:
+                    lines.remove(body);
+                    break;
+                case REPLACE:
+                    int split = TaskJournal.taskEnd(body, 0);
+                    if(split > 0 && TaskJournal.taskEnd(body, split) == body.length()) {
+                        int index = lines.indexOf(body.substring(0, split));
+                        if(index >= 0) {
+                            lines.set(index, body.substring(split));
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Finds the end of a task file string which consists of four terminated fields.
+     * @param str String to scan
+     * @param from Start index of the task
+     * @return Index after the task or -1 if the task is incomplete
+     */
+    private static int taskEnd(String str, int from) {
+        int index = from;
+        for(int field = 0; field < 4; field++) {
+            index = str.indexOf(SEPARATOR, index);
+            if(index < 0) {
+                return -1;
+            }
+            index += SEPARATOR.length();
+        }
+        return index;
+    }
+    
+    /**
+     * Appends one record to the journal of a day and schedules its compaction.
+     * The files are locked, so the compaction of another process can't drop the record.
+     * @param dayPath Path to the day file
+     * @param record Journal record
+     */
+    private static void append(String dayPath, String record) {
+        FilesLock.run(() -> {
+            synchronized(LOCK) {
+                TaskFilesWatcher.write(dayPath, () -> {
+                    try {
+                        Files.write(Paths.get(TaskJournal.getJournalPath(dayPath)), Arrays.asList(record), Charset.defaultCharset(),
+                                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        return;
+                    }
+                    Metrics.BYTES_WRITTEN.add(record.length() + 1);
+                    GroupCommit.sync(Paths.get(TaskJournal.getJournalPath(dayPath)));
+                    
+                    TaskJournal.schedule(dayPath);
+                });
+            }
+        });
+    }
+    
+    /**
+     * Schedules the compaction of a day, if it isn't scheduled yet.
+     * @param dayPath Path to the day file
+     */
+    private static void schedule(String dayPath) {
+        synchronized(LOCK) {
+            if(PENDING.add(dayPath)) {
+                COMPACTOR.schedule(() -> TaskJournal.compact(dayPath), COMPACT_DELAY_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+    }
+}
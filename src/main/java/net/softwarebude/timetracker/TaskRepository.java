@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Read access to the tasks of a range of days.
+ * Implementations only read the days within a range, so the cost of a query
+ * depends on the length of the range and not on the length of the history.
+ * All ranges are given as first and last day (inclusive).
+ * @author Matthias Fischer
+ */
+public interface TaskRepository {
+    
+    /**
+     * Lists the days of a range which have stored tasks.
+     * @param from First day of the range
+     * @param to Last day of the range (inclusive)
+     * @return Days in ascending order
+     */
+    List<LocalDate> days(LocalDate from, LocalDate to);
+    
+    /**
+     * Decodes the tasks of a day without creating Task objects.
+     * @param day Day to read
+     * @param consumer Receives the tasks
+     * @return Number of tasks
+     */
+    int forEachOfDay(LocalDate day, TaskCodec.TaskConsumer consumer);
+    
+    /**
+     * Counts the tasks of a day.
+     * @param day Day to count
+     * @return Number of tasks
+     */
+    default int countOfDay(LocalDate day) {
+        return this.forEachOfDay(day, (p, d, s, e) -> { });
+    }
+    
+    /**
+     * Decodes the tasks of a range day by day without creating Task objects.
+     * @param from First day of the range
+     * @param to Last day of the range (inclusive)
+     * @param consumer Receives the tasks
+     * @return Number of tasks
+     */
+    default int forEach(LocalDate from, LocalDate to, TaskCodec.TaskConsumer consumer) {
+        int count = 0;
+        for(LocalDate day : this.days(from, to)) {
+            count += this.forEachOfDay(day, consumer);
+        }
+        return count;
+    }
+    
+    /**
+     * Reads the tasks of a day.
+     * @param day Day to read
+     * @return Tasks of the day
+     */
+    default List<Task> findByDay(LocalDate day) {
+        List<Task> tasks = new ArrayList<>();
+        this.forEachOfDay(day, (p, d, s, e) -> tasks.add(new Task(p, d, s, e)));
+        return tasks;
+    }
+    
+    /**
+     * Reads all tasks of a range.
+     * @param from First day of the range
+     * @param to Last day of the range (inclusive)
+     * @return Tasks ordered by day
+     */
+    default List<Task> findByRange(LocalDate from, LocalDate to) {
+        List<Task> tasks = new ArrayList<>();
+        this.forEach(from, to, (p, d, s, e) -> tasks.add(new Task(p, d, s, e)));
+        return tasks;
+    }
+    
+    /**
+     * Reads the tasks of one project within a range.
+     * @param project Project name
+     * @param from First day of the range
+     * @param to Last day of the range (inclusive)
+     * @return Tasks ordered by day
+     */
+    default List<Task> findByProject(String project, LocalDate from, LocalDate to) {
+        List<Task> tasks = new ArrayList<>();
+        this.forEach(from, to, (p, d, s, e) -> {
+            if(project.equals(p)) {
+                tasks.add(new Task(p, d, s, e));
+            }
+        });
+        return tasks;
+    }
+    
+    /**
+     * Streams the tasks of a range. A day is only read when the stream reaches it.
+     * @param from First day of the range
+     * @param to Last day of the range (inclusive)
+     * @return Tasks ordered by day
+     */
+    default Stream<Task> stream(LocalDate from, LocalDate to) {
+        return this.days(from, to).stream().flatMap(day -> this.findByDay(day).stream());
+    }
+    
+    /**
+     * Counts the tasks of a range.
+     * @param from First day of the range
+     * @param to Last day of the range (inclusive)
+     * @return Number of tasks
+     */
+    default int count(LocalDate from, LocalDate to) {
+        int count = 0;
+        for(LocalDate day : this.days(from, to)) {
+            count += this.countOfDay(day);
+        }
+        return count;
+    }
+}
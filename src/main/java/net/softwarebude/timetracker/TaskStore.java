@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loading and saving of the tasks of a day without any user interface.
+ * Days are served out of the DayCache if possible and the neighbouring days are
+ * prefetched. Changes invalidate the cached day immediately and are written in the
+ * background in submission order.
+ * @author Matthias Fischer
+ */
+public class TaskStore {
+    
+    private final ProjectIndex projects;
+    
+    /**
+     * Constructor of a store
+     * @param projects Project list which receives the projects of new tasks
+     */
+    public TaskStore(ProjectIndex projects) {
+        this.projects = projects;
+    }
+    
+    /**
+     * Returns the tasks of a day if they are cached.
+     * @param date Date of the day
+     * @return Copy of the cached tasks or null
+     */
+    public List<Task> getCached(Calendar date) {
+        Calendar day = (Calendar)date.clone();
+        List<Task> cached = DayCache.getIfPresent(day);
+        if(cached != null) {
+            DayCache.prefetch(day);
+        }
+        return cached;
+    }
+    
+    /**
+     * Loads the tasks of a day in the background.
+     * @param date Date of the day
+     * @return Future with the tasks of the day
+     */
+    public CompletableFuture<List<Task>> load(Calendar date) {
+        Calendar day = (Calendar)date.clone();
+        return AsyncPersistence.read(() -> {
+            List<Task> tasks = Metrics.time("day.load", () -> DayCache.get(day));
+            DayCache.prefetch(day);
+            return tasks;
+        });
+    }
+    
+    /**
+     * Adds a task to a day.
+     * @param date Date of the day
+     * @param task New task
+     * @return Future which completes after the write
+     */
+    public CompletableFuture<Void> add(Calendar date, Task task) {
+        String path = EditTaskFiles.getFilePath(date);
+        DayCache.invalidate(path);
+        Task snapshot = new Task(task.toFileString());
+        CompletableFuture<Void> write = AsyncPersistence.write(() -> EditTaskFiles.addTask(path, snapshot));
+        this.addProject(task.getProject());
+        return write;
+    }
+    
+    /**
+     * Replaces a task of a day.
+     * @param date Date of the day
+     * @param oldFileString File string of the task before it was changed
+     * @param task Changed task
+     * @return Future which completes after the write
+     */
+    public CompletableFuture<Void> replace(Calendar date, String oldFileString, Task task) {
+        String path = EditTaskFiles.getFilePath(date);
+        DayCache.invalidate(path);
+        Task snapshot = new Task(task.toFileString());
+        return AsyncPersistence.write(() -> EditTaskFiles.replaceTask(path, oldFileString, snapshot));
+    }
+    
+    /**
+     * Removes a task of a day.
+     * @param date Date of the day
+     * @param task Removed task
+     * @return Future which completes after the write
+     */
+    public CompletableFuture<Void> remove(Calendar date, Task task) {
+        String path = EditTaskFiles.getFilePath(date);
+        DayCache.invalidate(path);
+        Task snapshot = new Task(task.toFileString());
+        return AsyncPersistence.write(() -> EditTaskFiles.removeTask(path, snapshot));
+    }
+    
+    /**
+     * Add a project to the project list. Only if its not already in the list.
+     * @param project Name of the project
+     */
+    public void addProject(String project) {
+        if(this.projects.add(project)) {
+            AsyncPersistence.write(() -> this.projects.persist(project));
+        }
+    }
+}
@@ -28,7 +28,10 @@ import java.awt.MenuItem;
 import java.awt.PopupMenu;
 import java.awt.SystemTray;
 import java.awt.TrayIcon;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
@@ -47,10 +50,21 @@ public class TimeTracker extends Application {
     
     public static final String VERSION = "1.0";
     
+    /**
+     * System property to exit after the first frame, e.g. for the training run of the class data sharing archive.
+     * The time until the first frame is printed before the exit, see "gradle startupTime".
+     */
+    public static final String PROPERTY_EXIT = "timetracker.exitAfterStartup";
+    
     @Override
     public void start(Stage stage) throws Exception {
         
-        Parent root = FXMLLoader.load(getClass().getResource("Application.fxml"));
+        // settings.ini is read while the window is built
+        Settings.shared();
+        
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("Application.fxml"));
+        Parent root = loader.load();
+        ApplicationController controller = loader.getController();
         Scene scene = new Scene(root);
         
         stage.setScene(scene);
@@ -59,10 +73,49 @@ public class TimeTracker extends Application {
         stage.initStyle(StageStyle.UTILITY);
         stage.getIcons().add(new javafx.scene.image.Image("/images/logo.png"));
         
-        Settings settings = new Settings();
-        settings.loadSettings();
+        stage.setOnCloseRequest(e -> System.exit(0));
+        stage.show();
+        
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                this.stop();
+                TimeTracker.this.afterFirstFrame(stage, controller);
+            }
+        }.start();
+    }
+    
+    /**
+     * Finishes the startup after the window was drawn for the first time.
+     * @param stage Main window
+     * @param controller Controller of the main window
+     */
+    private void afterFirstFrame(Stage stage, ApplicationController controller) {
+        long shown = System.currentTimeMillis();
+        controller.initDeferred();
+        Metrics.startDumps();
+        
+        Settings.shared().thenAcceptAsync(settings -> this.initSystemTray(stage, settings), AsyncPersistence.FX)
+                .exceptionally(AsyncPersistence::log);
         
+        AsyncPersistence.read(() -> shown - ManagementFactory.getRuntimeMXBean().getStartTime()).thenAccept(millis -> {
+            Metrics.record("startup.firstFrame", TimeUnit.MILLISECONDS.toNanos(millis));
+            if(Boolean.getBoolean(PROPERTY_EXIT)) {
+                System.out.println("startup.firstFrame " + millis + " ms");
+                System.exit(0);
+            }
+        }).exceptionally(AsyncPersistence::log);
+    }
+    
+    /**
+     * Adds the application to the system tray, if it is enabled in the settings.
+     * Closing the window only hides it then.
+     * @param stage Main window
+     * @param settings Loaded settings
+     */
+    private void initSystemTray(Stage stage, Settings settings) {
         if (SystemTray.isSupported() && settings.getSettingBoolean("useSystemTray")) {  
+            stage.setOnCloseRequest(null);
             Platform.setImplicitExit(false);
             SystemTray tray = SystemTray.getSystemTray();
 
@@ -101,11 +154,7 @@ public class TimeTracker extends Application {
             } catch (Exception e) {
                 System.err.println("Can't add to tray");
             }
-        } else {
-            stage.setOnCloseRequest(e -> System.exit(0));
         }
-        
-        stage.show();
     }
 
     /**
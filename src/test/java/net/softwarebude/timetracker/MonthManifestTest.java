@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Freshness checks of derived files with MonthManifest.
+ * @author Matthias Fischer
+ */
+public class MonthManifestTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testDeletedFile() throws Exception {
+        File first = this.write("2016-10-01.txt", "a");
+        this.write("2016-10-02.txt", "b");
+        String manifest = MonthManifest.of(this.folder.getRoot(), MonthManifest.DAY_FILES);
+        
+        assertTrue(first.delete());
+        assertFalse(MonthManifest.isUpToDate(manifest, this.folder.getRoot(), MonthManifest.DAY_FILES));
+    }
+    
+    @Test
+    public void testOlderModificationTime() throws Exception {
+        File first = this.write("2016-10-01.txt", "a");
+        String manifest = MonthManifest.of(this.folder.getRoot(), MonthManifest.DAY_FILES);
+        
+        assertTrue(first.setLastModified(first.lastModified() - 86400000L));
+        assertFalse(MonthManifest.isUpToDate(manifest, this.folder.getRoot(), MonthManifest.DAY_FILES));
+    }
+    
+    @Test
+    public void testFilter() throws Exception {
+        this.write("2016-10-01.txt", "a");
+        String manifest = MonthManifest.of(this.folder.getRoot(), MonthManifest.DAY_FILES);
+        
+        this.write("2016-10-01" + TaskJournal.EXTENSION, "+a");
+        assertTrue(MonthManifest.isUpToDate(manifest, this.folder.getRoot(), MonthManifest.DAY_FILES));
+        assertFalse(MonthManifest.isUpToDate(manifest, this.folder.getRoot(), MonthManifest.TASK_FILES));
+    }
+    
+    @Test
+    public void testWithFile() throws Exception {
+        this.write("2016-10-01.txt", "a");
+        File second = this.write("2016-10-02.txt", "b");
+        String manifest = MonthManifest.of(this.folder.getRoot(), MonthManifest.DAY_FILES);
+        
+        this.write("2016-10-02.txt", "changed");
+        manifest = MonthManifest.withFile(manifest, second);
+        assertEquals(MonthManifest.of(this.folder.getRoot(), MonthManifest.DAY_FILES), manifest);
+        
+        File third = this.write("2016-10-03.txt", "c");
+        manifest = MonthManifest.withFile(manifest, third);
+        assertEquals(MonthManifest.of(this.folder.getRoot(), MonthManifest.DAY_FILES), manifest);
+        
+        assertTrue(second.delete());
+        manifest = MonthManifest.withFile(manifest, second);
+        assertEquals(MonthManifest.of(this.folder.getRoot(), MonthManifest.DAY_FILES), manifest);
+    }
+    
+    /**
+     * Writes a file into the month directory.
+     * @param name File name
+     * @param row Content
+     * @return File
+     * @throws Exception if the file can't be written
+     */
+    private File write(String name, String row) throws Exception {
+        File file = new File(this.folder.getRoot(), name);
+        Files.write(file.toPath(), Arrays.asList(row));
+        return file;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round trips of day files through MonthSegment.
+ * @author Matthias Fischer
+ */
+public class MonthSegmentTest {
+    
+    private static final long START = 1476687600000L;
+    private static final long END = 1476694800000L;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testRoundTrip() throws Exception {
+        Task task = new Task("Project", "Description", START, END);
+        List<List<String>> days = new ArrayList<>();
+        for(int d = 1; d <= 31; d++) {
+            days.add(null);
+        }
+        days.set(0, Arrays.asList(
+                task.toFileString(),
+                task.toFileString(),
+                new Task("Project", "", START, END).toFileString(),
+                new Task("Other", "a;;b;", START, END).toFileString(),
+                new Task("Project", "Unset").toFileString(),
+                new Task("Other", "Running", END, Task.UNSET).toFileString()));
+        days.set(16, Arrays.asList(task.toFileString()));
+        days.set(30, new ArrayList<>());
+        
+        List<List<Task>> tasks = new ArrayList<>();
+        for(int d = 1; d <= 31; d++) {
+            tasks.add(this.readDay(d, days.get(d - 1)));
+        }
+        String path = new File(this.folder.getRoot(), "2016-10" + MonthSegment.EXTENSION).getPath();
+        MonthSegment.write(path, 2016, 10, "manifest", tasks);
+        
+        MonthSegment segment = MonthSegment.map(path);
+        assertEquals(2016, segment.getYear());
+        assertEquals(10, segment.getMonth());
+        assertEquals("manifest", segment.getManifest());
+        for(int d = 1; d <= 31; d++) {
+            List<String> rows = days.get(d - 1);
+            if(rows == null) {
+                assertFalse(segment.hasDay(d));
+                assertEquals(0, segment.getTaskCount(d));
+                continue;
+            }
+            
+            assertTrue(segment.hasDay(d));
+            assertEquals(rows.size(), segment.getTaskCount(d));
+            List<String> decoded = new ArrayList<>();
+            for(Task t : segment.readDay(d)) {
+                decoded.add(t.toFileString());
+            }
+            assertEquals(rows, decoded);
+        }
+    }
+    
+    /**
+     * Writes the rows of a day into a day file and reads it with TaskCodec.
+     * @param day Day of month
+     * @param rows Rows of the day file, null if the day has no day file
+     * @return Tasks of the day file or null
+     * @throws Exception if the file can't be written
+     */
+    private List<Task> readDay(int day, List<String> rows) throws Exception {
+        if(rows == null) {
+            return null;
+        }
+        
+        File file = this.folder.newFile(String.format("2016-10-%02d.txt", day));
+        StringBuilder content = new StringBuilder();
+        for(String row : rows) {
+            content.append(row).append('\n');
+        }
+        Files.write(file.toPath(), content.toString().getBytes(Charset.defaultCharset()));
+        return TaskCodec.local().readDay(file.getPath());
+    }
+}
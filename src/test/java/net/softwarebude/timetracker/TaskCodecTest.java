@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Matthias Fischer.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.softwarebude.timetracker;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round trips of task rows through TaskCodec and Task.
+ * @author Matthias Fischer
+ */
+public class TaskCodecTest {
+    
+    private static final long START = 1476687600000L;
+    private static final long END = 1476694800000L;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testEmptyDescription() {
+        this.assertRoundTrip(new Task("Project", "", START, END));
+    }
+    
+    @Test
+    public void testDescriptionWithSemicolons() {
+        this.assertRoundTrip(new Task("Project", "a;b", START, END));
+        this.assertRoundTrip(new Task("Project", ";a", START, END));
+        this.assertRoundTrip(new Task("Project", "a;", START, END));
+        this.assertRoundTrip(new Task("Project", "a;;b;;", START, END));
+        this.assertRoundTrip(new Task("Project", ";", START, END));
+    }
+    
+    @Test
+    public void testUnsetTimes() {
+        this.assertRoundTrip(new Task("Project", "Description"));
+        this.assertRoundTrip(new Task("Project", "Description", START, Task.UNSET));
+    }
+    
+    @Test
+    public void testCrlfFile() throws Exception {
+        Task first = new Task("Project", "First", START, END);
+        Task second = new Task("Other", "", END, END + 60000);
+        File file = this.folder.newFile("2016-10-17.txt");
+        String content = first.toFileString() + "\r\n" + second.toFileString() + "\r\n";
+        Files.write(file.toPath(), content.getBytes(Charset.defaultCharset()));
+        
+        List<Task> tasks = TaskCodec.local().readDay(file.getPath());
+        assertEquals(2, tasks.size());
+        TaskCodecTest.assertTask(first, tasks.get(0));
+        TaskCodecTest.assertTask(second, tasks.get(1));
+        
+        String[] rows = content.split("\n");
+        TaskCodecTest.assertTask(first, new Task(rows[0]));
+        TaskCodecTest.assertTask(second, new Task(rows[1]));
+    }
+    
+    @Test
+    public void testIncompleteRowsAreSkipped() {
+        List<Task> tasks = TaskCodecTest.decode("Project;;;Description;;;" + START + ";;;\n"
+                + "Project;;;Description;;;start;;;" + END + ";;;\n"
+                + new Task("Project", "Description", START, END).toFileString());
+        assertEquals(1, tasks.size());
+    }
+    
+    /**
+     * Checks that encoding and decoding of a task gives the same row and fields
+     * through TaskCodec and through Task.
+     * @param task Task
+     */
+    private void assertRoundTrip(Task task) {
+        String row = task.toFileString();
+        assertEquals(row, TaskCodec.encode(task, new StringBuilder()).toString());
+        
+        List<Task> decoded = TaskCodecTest.decode(row);
+        assertEquals(1, decoded.size());
+        TaskCodecTest.assertTask(task, decoded.get(0));
+        
+        Task parsed = new Task(row);
+        TaskCodecTest.assertTask(task, parsed);
+        assertEquals(row, parsed.toFileString());
+    }
+    
+    /**
+     * Decodes rows with TaskCodec.
+     * @param rows Rows
+     * @return Tasks
+     */
+    private static List<Task> decode(String rows) {
+        List<Task> tasks = new ArrayList<>();
+        TaskCodec.local().decode(rows, (p, d, s, e) -> tasks.add(new Task(p, d, s, e)));
+        return tasks;
+    }
+    
+    /**
+     * Checks that two tasks have the same fields.
+     * @param expected Expected task
+     * @param actual Actual task
+     */
+    private static void assertTask(Task expected, Task actual) {
+        assertEquals(expected.getProject(), actual.getProject());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getStartMillis(), actual.getStartMillis());
+        assertEquals(expected.getEndMillis(), actual.getEndMillis());
+    }
+}